@@ -0,0 +1,195 @@
+package bguspl.set;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static bguspl.set.UserInterfaceBroadcast.*;
+
+/**
+ * A spectator client for UserInterfaceBroadcast. Connects many subscribers to the broadcast, decodes the frames
+ * each one receives into a local copy of the game state, and prints the state of the first one at the end.
+ *
+ * Usage: BroadcastSpectatorClient [host] [port] [subscribers] [seconds]
+ */
+public class BroadcastSpectatorClient implements Runnable {
+
+    private final Socket socket;
+    private final AtomicLong frames;
+
+    /**
+     * The decoded game state.
+     */
+    private int[] slotToCard = new int[0];
+    private long[] slotTokens = new long[0];
+    private int[] scores = new int[0];
+    private long[] freezes = new long[0];
+    private long timer;
+    private long timerReference; // the local deadline or start time of a running timer (0 if not running)
+    private boolean timerCountdown;
+    private boolean keyframed;
+
+    private BroadcastSpectatorClient(Socket socket, AtomicLong frames) {
+        this.socket = socket;
+        this.frames = frames;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7778;
+        int subscribers = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+
+        AtomicLong frames = new AtomicLong();
+        BroadcastSpectatorClient[] clients = new BroadcastSpectatorClient[subscribers];
+        Thread[] threads = new Thread[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            clients[i] = new BroadcastSpectatorClient(new Socket(host, port), frames);
+            threads[i] = new Thread(clients[i], "spectator-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        System.out.println("connected " + subscribers + " spectators to " + host + ":" + port);
+
+        Thread.sleep(seconds * 1000);
+        for (BroadcastSpectatorClient client : clients)
+            client.socket.close();
+        for (Thread thread : threads)
+            thread.join();
+
+        System.out.println("decoded " + frames.get() + " frames");
+        System.out.println(clients[0]);
+    }
+
+    @Override
+    public void run() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (true) {
+                decode(in);
+                frames.incrementAndGet();
+            }
+        } catch (EOFException ignored) {
+        } catch (IOException e) {
+            if (!socket.isClosed()) System.out.println(Thread.currentThread().getName() + " disconnected: " + e.getMessage());
+        }
+    }
+
+    private void decode(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        if (!keyframed && type != KEYFRAME)
+            throw new IOException("the stream does not start with a keyframe");
+        switch (type) {
+            case KEYFRAME:
+                keyframed = true;
+                slotToCard = new int[(int) get(in)];
+                slotTokens = new long[slotToCard.length];
+                for (int slot = 0; slot < slotToCard.length; slot++) {
+                    slotToCard[slot] = (int) get(in) - 1;
+                    slotTokens[slot] = get(in);
+                }
+                scores = new int[(int) get(in)];
+                freezes = new long[scores.length];
+                for (int player = 0; player < scores.length; player++) {
+                    scores[player] = (int) get(in);
+                    freezes[player] = get(in);
+                }
+                timer = get(in);
+                get(in);
+                timerReference = 0;
+                break;
+            case PLACE_CARD: {
+                int slot = (int) get(in);
+                slotToCard[slot] = (int) get(in);
+                break;
+            }
+            case REMOVE_CARD:
+                slotToCard[(int) get(in)] = -1;
+                break;
+            case PLACE_TOKEN: {
+                int player = (int) get(in);
+                slotTokens[(int) get(in)] |= 1L << player;
+                break;
+            }
+            case REMOVE_TOKEN: {
+                int player = (int) get(in);
+                slotTokens[(int) get(in)] &= ~(1L << player);
+                break;
+            }
+            case REMOVE_TOKENS:
+                slotTokens[(int) get(in)] = 0L;
+                break;
+            case CLEAR_TOKENS:
+                Arrays.fill(slotTokens, 0L);
+                break;
+            case COUNTDOWN:
+                timer = get(in);
+                get(in);
+                timerReference = 0;
+                break;
+            case ELAPSED:
+                timer = get(in);
+                timerReference = 0;
+                break;
+            case TIMER: {
+                timerCountdown = get(in) != 0;
+                long millies = get(in);
+                get(in);
+                timerReference = System.currentTimeMillis() + (timerCountdown ? millies : -millies);
+                break;
+            }
+            case FREEZE: {
+                int player = (int) get(in);
+                freezes[player] = get(in);
+                break;
+            }
+            case SCORE: {
+                int player = (int) get(in);
+                scores[player] = (int) get(in);
+                break;
+            }
+            case WINNER: {
+                long count = get(in);
+                for (long i = 0; i < count; i++)
+                    get(in);
+                break;
+            }
+            case SLOTS: {
+                long count = get(in);
+                for (long i = 0; i < count; i++) {
+                    int slot = (int) get(in);
+                    slotToCard[slot] = (int) get(in) - 1;
+                    slotTokens[slot] = 0L;
+                }
+                break;
+            }
+            default:
+                throw new IOException("unknown frame type " + type);
+        }
+    }
+
+    private static long get(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cards: " + Arrays.toString(slotToCard) + " tokens: " + Arrays.toString(slotTokens)
+                + " scores: " + Arrays.toString(scores) + " freezes: " + Arrays.toString(freezes) + " timer: " + timer();
+    }
+
+    private long timer() {
+        if (timerReference == 0) return timer;
+        long now = System.currentTimeMillis();
+        return timerCountdown ? Math.max(timerReference - now, 0) : now - timerReference;
+    }
+}
@@ -0,0 +1,131 @@
+package bguspl.set;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * A precomputed table of the card that completes every pair of cards to a legal set (for decks with 3 values per
+ * feature, where every pair has exactly one completing card). The table is generated once per featureCount into a
+ * versioned binary file, and memory-mapped read-only, so game instances on the same host share it in the page cache
+ * and it takes no heap.
+ *
+ * File format (big endian): magic, format version, featureSize, featureCount (ints), and then the completing card
+ * (a short) of every pair a < b, in the order of b and then a (the pair is at index b * (b - 1) / 2 + a). The cards are
+ * unsigned shorts.
+ */
+public class CompletionTable {
+
+    private static final int MAGIC = 0x53455454; // "SETT"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final MappedByteBuffer table;
+
+    private CompletionTable(MappedByteBuffer table) {
+        this.table = table;
+    }
+
+    /**
+     * Opens the completion table of the game configuration, generating its file first if needed.
+     * @param config - the game configuration.
+     * @param logger - the logger.
+     * @return       - the table, or null if the tables are disabled, not supported by the configuration or failed.
+     */
+    public static CompletionTable load(Config config, Logger logger) {
+        if (config.setTablesDirectory.isEmpty()) return null;
+        if (config.featureSize != 3) {
+            logger.info("set tables are only precomputed for FeatureSize=3, computing sets directly");
+            return null;
+        }
+        if ((long) config.deckSize * (config.deckSize - 1) + HEADER_SIZE > Integer.MAX_VALUE) {
+            logger.severe("the set tables of a deck of " + config.deckSize + " cards are too large to map");
+            return null;
+        }
+        Path file = Paths.get(config.setTablesDirectory,
+                "completion-" + config.featureSize + "-" + config.featureCount + ".bin");
+        try {
+            if (!valid(config, file)) {
+                long start = System.currentTimeMillis();
+                generate(config, file);
+                logger.info("generated the set tables " + file + " in " + (System.currentTimeMillis() - start) + " ms");
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return new CompletionTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        } catch (IOException e) {
+            logger.severe("error loading the set tables " + file + ": " + e);
+            return null;
+        }
+    }
+
+    private static long size(Config config) {
+        return HEADER_SIZE + (long) config.deckSize * (config.deckSize - 1);
+    }
+
+    private static boolean valid(Config config, Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) != size(config)) return false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            return header.getInt(0) == MAGIC && header.getInt(4) == FORMAT_VERSION
+                    && header.getInt(8) == config.featureSize && header.getInt(12) == config.featureCount;
+        }
+    }
+
+    /**
+     * Writes the table to a temporary file and atomically moves it in place (so concurrent instances never read a
+     * partial table).
+     */
+    private static void generate(Config config, Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            int[][] features = new int[config.deckSize][config.featureCount];
+            for (int card = 0; card < config.deckSize; card++)
+                for (int i = config.featureCount - 1, rest = card; i >= 0; --i, rest /= config.featureSize)
+                    features[card][i] = rest % config.featureSize;
+
+            try (OutputStream os = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(config.featureSize);
+                out.writeInt(config.featureCount);
+                for (int b = 1; b < config.deckSize; b++)
+                    for (int a = 0; a < b; a++) {
+                        int third = 0;
+                        for (int i = 0; i < config.featureCount; i++)
+                            third = third * 3 + (6 - features[a][i] - features[b][i]) % 3;
+                        out.writeShort(third);
+                    }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @param a - a card.
+     * @param b - another card.
+     * @return  - the card that forms a legal set with the two cards.
+     */
+    public int complete(int a, int b) {
+        if (a == b) return a;
+        if (a > b) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        return table.getChar(HEADER_SIZE + 2 * (b * (b - 1) / 2 + a));
+    }
+}
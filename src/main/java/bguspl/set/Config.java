@@ -21,6 +21,16 @@ public class Config {
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * Whether the game records its flight recorder events (key presses, tokens, claims, verdicts etc.) to a file
+     */
+    public final boolean flightRecorder;
+
+    /**
+     * The flight recording file (written when the game ends)
+     */
+    public final String flightRecorderFile;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -31,6 +41,11 @@ public class Config {
      */
     public final int featureSize;
 
+    /**
+     * The directory of the precomputed set tables, generated on first use and shared by all the games (empty disables)
+     */
+    public final String setTablesDirectory;
+
     /**
      * The total number of cards in the deck (i.e. featureSize ^ featureCount)
      */
@@ -56,6 +71,16 @@ public class Config {
      */
     public final boolean hints;
 
+    /**
+     * Whether players claim their sets directly on the table (true) or through the dealer's queue (false)
+     */
+    public final boolean optimisticCommit;
+
+    /**
+     * Whether the dealer chooses the dealt cards so that the table holds a legal set whenever the remaining cards allow it
+     */
+    public final boolean guaranteeSets;
+
     /**
      * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
      */
@@ -86,6 +111,46 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * The maximum number of milliseconds to wait for the game threads to stop when the game ends
+     */
+    public final long shutdownTimeoutMillis;
+
+    /**
+     * The number of games played one after the other in the same window and process (0 plays until the window is closed)
+     */
+    public final int sessionGames;
+
+    /**
+     * The number of milliseconds after which the session ends by itself, as if the window was closed (0 or less never)
+     */
+    public final long exitAfterMillis;
+
+    /**
+     * The file the game state is periodically saved to, and resumed from on startup (empty disables checkpoints)
+     */
+    public final String checkpointFile;
+
+    /**
+     * The number of milliseconds between checkpoints of the game state
+     */
+    public final long checkpointIntervalMillis;
+
+    /**
+     * The directory a summary file of the statistics of every game is written to (empty disables analytics)
+     */
+    public final String analyticsDirectory;
+
+    /**
+     * The leaderboard file the results of every game are added to, shared by all the games (empty disables)
+     */
+    public final String leaderboardFile;
+
+    /**
+     * The maximum number of player names in a new leaderboard file
+     */
+    public final int leaderboardCapacity;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -132,6 +197,36 @@ public class Config {
      */
     public final int fontSize;
 
+    /**
+     * Whether the display events are published to an event bus and consumed by each sink on its own thread
+     */
+    public final boolean eventBus;
+
+    /**
+     * The number of events the event bus holds (rounded up to a power of two)
+     */
+    public final int eventBusSize;
+
+    /**
+     * The TCP port on which remote players may connect and send key presses (0 or less disables network input)
+     */
+    public final int networkPort;
+
+    /**
+     * The local address the network input is bound to (127.0.0.1 accepts local connections only)
+     */
+    public final String networkAddress;
+
+    /**
+     * The TCP port on which spectators may connect and receive the game state (0 or less disables broadcasting)
+     */
+    public final int broadcastPort;
+
+    /**
+     * The local address the broadcast is bound to (127.0.0.1 accepts local spectators only)
+     */
+    public final String broadcastAddress;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -150,7 +245,8 @@ public class Config {
 
     /**
      * Attempts to read the config properties from the current working directory. Otherwise, tries to load them
-     * as a resource.
+     * as a resource. Any property can be overridden with a system property prefixed with "set." (e.g.
+     * -Dset.TableDelaySeconds=0).
      *
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
@@ -173,6 +269,9 @@ public class Config {
             }
         }
 
+        for (String name : System.getProperties().stringPropertyNames())
+            if (name.startsWith("set."))
+                properties.setProperty(name.substring(4), System.getProperty(name));
         return properties;
     }
 
@@ -192,9 +291,12 @@ public class Config {
         randomSpinMax = Long.parseLong(properties.getProperty("RandomSpinMax", "0"));
         if (randomSpinMax < randomSpinMin || randomSpinMin < 0)
             logger.severe("invalid random spin cycles: max: " + randomSpinMax + " min: " + randomSpinMin);
+        flightRecorder = Boolean.parseBoolean(properties.getProperty("FlightRecorder", "False"));
+        flightRecorderFile = properties.getProperty("FlightRecorderFile", "logs/game.jfr").trim();
 
         // cards settings
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
+        setTablesDirectory = properties.getProperty("SetTablesDirectory", "").trim();
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
 
@@ -204,12 +306,22 @@ public class Config {
         players = humanPlayers + computerPlayers;
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+        optimisticCommit = Boolean.parseBoolean(properties.getProperty("OptimisticCommit", "False"));
+        guaranteeSets = Boolean.parseBoolean(properties.getProperty("GuaranteeSets", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        shutdownTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("ShutdownTimeoutSeconds", "2")) * 1000.0);
+        sessionGames = Integer.parseInt(properties.getProperty("SessionGames", "1"));
+        exitAfterMillis = (long) (Double.parseDouble(properties.getProperty("ExitAfterSeconds", "0")) * 1000.0);
+        checkpointFile = properties.getProperty("CheckpointFile", "").trim();
+        checkpointIntervalMillis = (long) (Double.parseDouble(properties.getProperty("CheckpointIntervalSeconds", "10")) * 1000.0);
+        analyticsDirectory = properties.getProperty("AnalyticsDirectory", "").trim();
+        leaderboardFile = properties.getProperty("LeaderboardFile", "").trim();
+        leaderboardCapacity = Integer.parseInt(properties.getProperty("LeaderboardCapacity", "65536"));
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
@@ -224,6 +336,14 @@ public class Config {
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
         playerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+        eventBus = Boolean.parseBoolean(properties.getProperty("EventBus", "False"));
+        eventBusSize = Integer.parseInt(properties.getProperty("EventBusSize", "4096"));
+
+        // network settings
+        networkPort = Integer.parseInt(properties.getProperty("NetworkPort", "0"));
+        networkAddress = properties.getProperty("NetworkAddress", "127.0.0.1").trim();
+        broadcastPort = Integer.parseInt(properties.getProperty("BroadcastPort", "0"));
+        broadcastAddress = properties.getProperty("BroadcastAddress", "127.0.0.1").trim();
 
         // keyboard input data
         playerKeys = new int[players][rows * columns];
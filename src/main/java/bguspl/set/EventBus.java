@@ -0,0 +1,191 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * A bounded ring of preallocated display events with any number of publishers and consumers (in the style of the LMAX
+ * Disruptor). A publisher claims the next sequence, fills the event in its cell and publishes it. Every consumer runs
+ * on its own thread with its own sequence and wait strategy, and replays the events in order on its sink user
+ * interface. Publishers wait only when the ring is full, i.e. when the slowest consumer is a whole ring behind.
+ */
+public class EventBus {
+
+    /**
+     * How a consumer waits for the next event.
+     */
+    public enum WaitStrategy {
+        /** Parks until a publisher wakes it up (lowest CPU usage, a wake up per event). */
+        BLOCKING,
+        /** Yields the processor between checks (lowest latency, uses a processor while the game runs). */
+        YIELDING,
+        /** Sleeps for a short time between checks (handles the events in batches). */
+        SLEEPING
+    }
+
+    private static final long SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Logger logger;
+    private final GameEvent[] ring;
+    private final int mask;
+
+    /**
+     * The last claimed sequence, and the sequence published in each cell.
+     */
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLongArray published;
+
+    /**
+     * The consumers (an array copied on every added consumer, iterated by the publishers without allocating).
+     */
+    private volatile Consumer[] consumers = new Consumer[0];
+
+    /**
+     * @param logger   - the logger.
+     * @param size     - the number of events in the ring (rounded up to a power of two).
+     * @param capacity - the maximum array length of an event (the table size or the number of players).
+     */
+    public EventBus(Logger logger, int size, int capacity) {
+        if (size <= 0) throw new IllegalArgumentException("the event bus size must be positive: " + size);
+        this.logger = logger;
+        int cells = Integer.highestOneBit(size) == size ? size : Integer.highestOneBit(size) << 1;
+        ring = new GameEvent[cells];
+        for (int i = 0; i < cells; i++)
+            ring[i] = new GameEvent(capacity);
+        mask = cells - 1;
+        published = new AtomicLongArray(cells);
+        for (int i = 0; i < cells; i++)
+            published.set(i, -1);
+    }
+
+    /**
+     * Adds a consumer that replays the events published from now on, on its own (daemon) thread.
+     * @param name - the name of the consumer thread.
+     * @param sink - the user interface the events are replayed on.
+     * @param wait - how the consumer waits for the next event.
+     */
+    public void addConsumer(String name, UserInterface sink, WaitStrategy wait) {
+        Consumer consumer = new Consumer(sink, wait, claimed.get());
+        ThreadLogger thread = new ThreadLogger(consumer, name, logger);
+        thread.setDaemon(true);
+        consumer.thread = thread;
+        synchronized (this) {
+            Consumer[] added = Arrays.copyOf(consumers, consumers.length + 1);
+            added[consumers.length] = consumer;
+            consumers = added;
+        }
+        thread.startWithLog();
+    }
+
+    /**
+     * Claims the next event, waiting while the ring is full. The event must be published after it is filled.
+     * @return - the sequence of the event.
+     */
+    long next() {
+        long sequence = claimed.incrementAndGet();
+        while (sequence - ring.length > minimumSequence())
+            Thread.yield();
+        return sequence;
+    }
+
+    /**
+     * @return - the event of a claimed sequence.
+     */
+    GameEvent get(long sequence) {
+        return ring[(int) sequence & mask];
+    }
+
+    /**
+     * Publishes a filled event to the consumers.
+     */
+    void publish(long sequence) {
+        published.set((int) sequence & mask, sequence);
+        for (Consumer consumer : consumers)
+            if (consumer.parked) LockSupport.unpark(consumer.thread);
+    }
+
+    private long minimumSequence() {
+        long minimum = claimed.get();
+        for (Consumer consumer : consumers)
+            minimum = Math.min(minimum, consumer.sequence.get());
+        return minimum;
+    }
+
+    /**
+     * Waits until the consumers replayed all the published events (or until the timeout) and stops them.
+     * @param timeoutMillis - the maximum time to wait for the consumers.
+     */
+    public void shutdown(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long last = claimed.get();
+        for (Consumer consumer : consumers) {
+            while (consumer.sequence.get() < last && System.currentTimeMillis() < deadline)
+                LockSupport.parkNanos(SLEEP_NANOS);
+            consumer.running = false;
+            LockSupport.unpark(consumer.thread);
+        }
+        for (Consumer consumer : consumers)
+            try {
+                consumer.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+    }
+
+    private class Consumer implements Runnable {
+
+        private final UserInterface sink;
+        private final WaitStrategy wait;
+
+        /**
+         * The last sequence the consumer replayed.
+         */
+        private final AtomicLong sequence;
+
+        private ThreadLogger thread;
+        private volatile boolean parked;
+        private volatile boolean running = true;
+
+        private Consumer(UserInterface sink, WaitStrategy wait, long sequence) {
+            this.sink = sink;
+            this.wait = wait;
+            this.sequence = new AtomicLong(sequence);
+        }
+
+        @Override
+        public void run() {
+            long next = sequence.get() + 1;
+            while (running) {
+                if (published.get((int) next & mask) == next) {
+                    try {
+                        get(next).dispatch(sink);
+                    } catch (RuntimeException e) {
+                        logger.severe("event bus consumer " + thread.getName() + " failed: " + e);
+                    }
+                    sequence.set(next++);
+                    continue;
+                }
+                switch (wait) {
+                    case BLOCKING:
+                        parked = true;
+                        if (published.get((int) next & mask) != next && running)
+                            LockSupport.parkNanos(this, PARK_NANOS);
+                        parked = false;
+                        break;
+                    case YIELDING:
+                        Thread.yield();
+                        break;
+                    case SLEEPING:
+                        LockSupport.parkNanos(SLEEP_NANOS);
+                        break;
+                }
+            }
+            ThreadLogger.logStop(logger, thread.getName());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package bguspl.set;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Custom Java Flight Recorder events of the game engine hot paths. The events cost (almost) nothing unless they are
+ * enabled in a running recording: started by the game when FlightRecorder is set, or by the JVM (e.g. with
+ * -XX:StartFlightRecording) and then viewed with JDK Mission Control.
+ * Usage: create an event, check isEnabled() before filling it (so that nothing is computed when disabled), commit it.
+ * On the key press path check keyPressEnabled() / tokenEnabled() first instead, so that no event is even created
+ * (allocated) when disabled.
+ */
+public class FlightEvents {
+
+    private static final String CATEGORY = "Set Game";
+
+    /**
+     * The types of the key press path events, to check whether they are enabled without creating an event.
+     */
+    private static final EventType KEY_PRESS_TYPE = EventType.getEventType(KeyPress.class);
+    private static final EventType TOKEN_TYPE = EventType.getEventType(Token.class);
+
+    @Name("bguspl.set.KeyPress")
+    @Label("Key Press")
+    @Description("A key press accepted by a player (presses while frozen or with a full queue are not recorded, since "
+            + "the computer players press keys in a busy loop)")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class KeyPress extends Event {
+        @Label("Player")
+        public int player;
+        @Label("Slot")
+        public int slot;
+    }
+
+    @Name("bguspl.set.Token")
+    @Label("Token")
+    @Description("A token placed or removed by a player, or dropped because the dealer held the table lock")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Token extends Event {
+        @Label("Player")
+        public int player;
+        @Label("Slot")
+        public int slot;
+        @Label("Place")
+        @Description("True for placing a token, false for removing it")
+        public boolean place;
+        @Label("Dropped")
+        @Description("True if the table lock was not available")
+        public boolean dropped;
+    }
+
+    @Name("bguspl.set.Claim")
+    @Label("Claim")
+    @Description("A set claimed by a player and queued for the dealer")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Claim extends Event {
+        @Label("Player")
+        public int player;
+        @Label("Queue Length")
+        public int queueLength;
+    }
+
+    @Name("bguspl.set.Verdict")
+    @Label("Verdict")
+    @Description("The dealer checking a claimed set (the duration includes replacing the set)")
+    @Category(CATEGORY)
+    @Threshold("0 ms")
+    public static class Verdict extends Event {
+        @Label("Player")
+        public int player;
+        @Label("Legal")
+        public boolean legal;
+    }
+
+    @Name("bguspl.set.Reshuffle")
+    @Label("Reshuffle")
+    @Description("The dealer replacing all the cards on the table")
+    @Category(CATEGORY)
+    @Threshold("0 ms")
+    public static class Reshuffle extends Event {
+        @Label("Claimed Cards")
+        @Description("The cards of claimed sets removed from the game with the reshuffle")
+        public int claimedCards;
+        @Label("Dealer's Deck")
+        public int dealersDeck;
+    }
+
+    @Name("bguspl.set.FindSets")
+    @Label("Find Sets")
+    @Description("A search of legal sets")
+    @Category(CATEGORY)
+    @Threshold("1 ms")
+    public static class FindSets extends Event {
+        @Label("Deck Size")
+        public int deckSize;
+        @Label("Count")
+        @Description("The maximum number of sets to find (-1 if a visitor stopped the enumeration)")
+        public int count;
+        @Label("Found")
+        @Description("The number of sets found (-1 if the sets were enumerated to a visitor)")
+        public int found;
+    }
+
+    /**
+     * @return - true iff the KeyPress events are enabled in a running recording.
+     */
+    public static boolean keyPressEnabled() {
+        return KEY_PRESS_TYPE.isEnabled();
+    }
+
+    /**
+     * @return - true iff the Token events are enabled in a running recording.
+     */
+    public static boolean tokenEnabled() {
+        return TOKEN_TYPE.isEnabled();
+    }
+
+    /**
+     * Starts a recording of the game events (with their default thresholds), dumped to the given file when closed.
+     * @param file - the recording file.
+     * @return     - the recording.
+     */
+    public static Recording startRecording(String file) throws IOException {
+        Recording recording = new Recording();
+        recording.setName("Set Game");
+        recording.enable(KeyPress.class);
+        recording.enable(Token.class);
+        recording.enable(Claim.class);
+        recording.enable(Verdict.class).withThreshold(Duration.ZERO);
+        recording.enable(Reshuffle.class).withThreshold(Duration.ZERO);
+        recording.enable(FindSets.class).withThreshold(Duration.ofMillis(1));
+        recording.setDestination(Paths.get(file));
+        recording.start();
+        return recording;
+    }
+}
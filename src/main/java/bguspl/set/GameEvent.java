@@ -0,0 +1,98 @@
+package bguspl.set;
+
+/**
+ * A display event in the EventBus ring. The events are preallocated and reused: the publisher fills the fields of its
+ * type, and every consumer replays it on its sink user interface.
+ */
+final class GameEvent {
+
+    enum Type {
+        PLACE_CARD, REMOVE_CARD, UPDATE_SLOTS, PLACE_TOKEN, REMOVE_ALL_TOKENS, REMOVE_TOKENS, REMOVE_TOKEN,
+        COUNTDOWN, ELAPSED, TIMER, FREEZE, SCORE, WINNER, NEW_GAME, DISPOSE
+    }
+
+    Type type;
+    int player;
+    int slot;
+    int card;
+    long millies;
+    long warnMillis;
+    boolean flag;
+
+    /**
+     * The slots and cards of UPDATE_SLOTS, or the players of WINNER (in values), and their number.
+     */
+    final int[] slots;
+    final int[] values;
+    int length;
+
+    GameEvent(int capacity) {
+        slots = new int[capacity];
+        values = new int[capacity];
+    }
+
+    void setArrays(int[] slots, int[] values) {
+        length = values.length;
+        if (slots != null) System.arraycopy(slots, 0, this.slots, 0, length);
+        System.arraycopy(values, 0, this.values, 0, length);
+    }
+
+    private int[] copy(int[] array) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Replays the event on a user interface.
+     */
+    void dispatch(UserInterface ui) {
+        switch (type) {
+            case PLACE_CARD:
+                ui.placeCard(card, slot);
+                break;
+            case REMOVE_CARD:
+                ui.removeCard(slot);
+                break;
+            case UPDATE_SLOTS:
+                ui.updateSlots(copy(slots), copy(values));
+                break;
+            case PLACE_TOKEN:
+                ui.placeToken(player, slot);
+                break;
+            case REMOVE_ALL_TOKENS:
+                ui.removeTokens();
+                break;
+            case REMOVE_TOKENS:
+                ui.removeTokens(slot);
+                break;
+            case REMOVE_TOKEN:
+                ui.removeToken(player, slot);
+                break;
+            case COUNTDOWN:
+                ui.setCountdown(millies, flag);
+                break;
+            case ELAPSED:
+                ui.setElapsed(millies);
+                break;
+            case TIMER:
+                ui.setTimer(millies, warnMillis, flag);
+                break;
+            case FREEZE:
+                ui.setFreeze(player, millies);
+                break;
+            case SCORE:
+                ui.setScore(player, card);
+                break;
+            case WINNER:
+                ui.announceWinner(copy(values));
+                break;
+            case NEW_GAME:
+                ui.newGame();
+                break;
+            case DISPOSE:
+                ui.dispose();
+                break;
+        }
+    }
+}
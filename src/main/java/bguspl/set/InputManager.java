@@ -5,6 +5,8 @@ import bguspl.set.ex.Player;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -13,12 +15,12 @@ import java.util.logging.Logger;
 class InputManager extends KeyAdapter {
 
     private static final int MAX_KEY_CODE = 255;
-    private final Player[] players;
+    private final AtomicReferenceArray<Player> players;
     int[] keyMap = new int[MAX_KEY_CODE + 1];
     int[] keyToSlot = new int[MAX_KEY_CODE + 1];
     private final Logger logger;
 
-    public InputManager(Logger logger, Config config, Player[] players) {
+    public InputManager(Logger logger, Config config, AtomicReferenceArray<Player> players) {
         this.players = players;
         this.logger = logger;
 
@@ -42,9 +44,10 @@ class InputManager extends KeyAdapter {
         // dispatch the key event to the player according to the key map
         int keyCode = e.getKeyCode();
         int player = keyMap[keyCode] - 1;
-        if (player >= 0){
-            logger.severe("key " + keyCode + " was pressed by player " + (player + 1));
-            players[player].keyPressed(keyToSlot[keyCode]);
+        Player target = player >= 0 ? players.get(player) : null; // null until the game entities are created
+        if (target != null){
+            if (logger.isLoggable(Level.FINE)) logger.fine("key " + keyCode + " was pressed by player " + (player + 1));
+            target.keyPressed(keyToSlot[keyCode]);
         }
     }
 }
@@ -4,12 +4,15 @@ import bguspl.set.ex.Dealer;
 import bguspl.set.ex.Player;
 import bguspl.set.ex.Table;
 
+import jdk.jfr.Recording;
+
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.*;
 
 /**
@@ -17,17 +20,22 @@ import java.util.logging.*;
  */
 public class Main {
 
-    private static Dealer dealer;
+    private static volatile Dealer dealer;
     private static Thread mainThread;
 
-    private static boolean xButtonPressed = false;
+    private static volatile boolean xButtonPressed = false;
+    private static volatile boolean exitTimeReached = false;
     private static Logger logger;
+    private static long shutdownTimeoutMillis;
 
     public static void xButtonPressed() throws InterruptedException {
         if (logger != null) logger.severe("exit button pressed");
         xButtonPressed = true;
         if (dealer != null) dealer.terminate();
-        mainThread.join();
+        // the dealer waits up to the shutdown timeout for the players, and the rest of the shutdown gets as much
+        mainThread.join(2 * shutdownTimeoutMillis);
+        if (mainThread.isAlive() && logger != null)
+            logger.severe("the game did not stop within " + 2 * shutdownTimeoutMillis + " ms, exiting anyway");
     }
 
     /**
@@ -43,9 +51,19 @@ public class Main {
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        shutdownTimeoutMillis = config.shutdownTimeoutMillis;
+        Util util = new UtilImpl(config, CompletionTable.load(config, logger));
+        Recording recording = null;
+        if (config.flightRecorder) {
+            try {
+                recording = FlightEvents.startRecording(config.flightRecorderFile);
+            } catch (IOException | RuntimeException e) {
+                logger.severe("error starting the flight recording: " + e.getMessage());
+            }
+        }
 
-        Player[] players = new Player[config.players];
+        // the input threads read the players through this array (the players are published when they are created)
+        AtomicReferenceArray<Player> players = new AtomicReferenceArray<>(config.players);
         UserInterface ui = null;
         try {
             ui = new UserInterfaceSwing(logger, config, players);
@@ -55,34 +73,128 @@ public class Main {
             if (config.humanPlayers > 0)
                 logger.severe("warning: running with human players with no user interface");
         }
-        ui = new UserInterfaceDecorator(logger, util, ui);
+        UserInterfaceBroadcast broadcast = null;
+        if (config.broadcastPort > 0) {
+            try {
+                broadcast = new UserInterfaceBroadcast(logger, config, config.eventBus ? null : ui);
+                ThreadLogger broadcastThread = new ThreadLogger(broadcast, "broadcast", logger);
+                broadcastThread.setDaemon(true);
+                broadcastThread.startWithLog();
+            } catch (IOException | IllegalArgumentException e) {
+                logger.severe("error creating broadcast user interface: " + e.getMessage());
+            }
+        }
+        if (config.eventBus) {
+            // every sink consumes the display events on its own thread
+            EventBus bus = new EventBus(logger, config.eventBusSize, Math.max(config.tableSize, config.players));
+            if (ui != null) bus.addConsumer("screen-events", ui, EventBus.WaitStrategy.BLOCKING);
+            if (broadcast != null) bus.addConsumer("broadcast-events", broadcast, EventBus.WaitStrategy.BLOCKING);
+            bus.addConsumer("log-events", new UserInterfaceDecorator(logger, util, null), EventBus.WaitStrategy.SLEEPING);
+            ui = new UserInterfaceEventBus(bus);
+        } else {
+            if (broadcast != null) ui = broadcast;
+            ui = new UserInterfaceDecorator(logger, util, ui);
+        }
 
         Env env = new Env(logger, config, ui, util);
 
-        // create the game entities
+        // create the game entities once: the games of the session reset them in place and run on the same threads
+        SessionPool pool = new SessionPool(1 + config.players + config.computerPlayers);
         Table table = new Table(env);
-        dealer = new Dealer(env, table, players);
-        for (int i = 0; i < players.length; i++)
-            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+        Player[] entities = new Player[config.players];
+        dealer = new Dealer(env, table, entities, pool);
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = new Player(env, dealer, table, i, i < config.humanPlayers);
+            players.set(i, entities[i]);
+        }
 
-        // start the dealer thread
-        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
-        dealerThread.startWithLog();
+        // start the network input thread (if enabled), feeding the players
+        NetworkInputManager network = null;
+        ThreadLogger networkThread = null;
+        if (config.networkPort > 0) {
+            try {
+                network = new NetworkInputManager(logger, config, players);
+                networkThread = new ThreadLogger(network, "network", logger);
+                networkThread.startWithLog();
+            } catch (IOException | IllegalArgumentException e) {
+                logger.severe("error creating network input: " + e.getMessage());
+            }
+        }
+
+        if (config.exitAfterMillis > 0) {
+            Thread exitTimer = new Thread(() -> {
+                try {
+                    Thread.sleep(config.exitAfterMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                logger.severe("exit time reached");
+                exitTimeReached = true;
+                dealer.terminate();
+            }, "exit-timer");
+            exitTimer.setDaemon(true);
+            exitTimer.start();
+        }
 
         try {
+            // play the games of the session, reusing the environment (and the loaded user interface) between them
+            for (int game = 1; ; game++) {
+                playGame(pool);
+                if (xButtonPressed || exitTimeReached || game == config.sessionGames) break;
+                if (config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
+                if (xButtonPressed || exitTimeReached) break;
+                env.ui.newGame();
+                for (int i = 0; i < entities.length; i++) {
+                    env.ui.setScore(i, 0);
+                    env.ui.setFreeze(i, 0);
+                }
+                dealer.newGame();
+            }
+
             // shutdown stuff
-            dealerThread.joinWithLog();
-            if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
+            dealer.close();
+            pool.shutdown();
+            if (network != null) {
+                ShutdownCoordinator shutdown = new ShutdownCoordinator(logger);
+                shutdown.register(networkThread, network::terminate);
+                if (shutdown.shutdown(config.shutdownTimeoutMillis).isEmpty())
+                    ThreadLogger.logStop(logger, networkThread.getName());
+            }
+            if (!xButtonPressed && !exitTimeReached && config.endGamePauseMillies > 0)
+                Thread.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
             if (!xButtonPressed) env.ui.dispose();
+            if (recording != null) {
+                recording.stop();
+                recording.close();
+                logger.severe("flight recording written to " + config.flightRecorderFile);
+            }
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
 
+    /**
+     * Plays a single game: runs the dealer on a thread of the session pool and waits for the game to end.
+     *
+     * @param pool - the threads of the session.
+     */
+    private static void playGame(SessionPool pool) throws InterruptedException {
+        if (xButtonPressed || exitTimeReached) dealer.terminate(); // the session ended while the game was reset
+
+        // start the dealer thread
+        ThreadLogger.logStart(logger, "dealer");
+        SessionPool.Task dealerThread = pool.start(dealer, "dealer");
+        try {
+            dealerThread.join();
+        } finally {
+            ThreadLogger.logStop(logger, "dealer");
+        }
+    }
+
     private static Logger initLogger() {
 
         //just to make our log file nicer :)
@@ -0,0 +1,184 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class handles the input from remote players over the network, translates it to table grid slots and
+ * dispatches accordingly (the network counterpart of InputManager).
+ *
+ * Protocol: a connection first sends one byte with the player id, and from then on one byte with the slot for
+ * every key press. Only human players may be played remotely, and the server is bound to the configured local
+ * address (the loopback address by default), since the connections are not authenticated. All connections are
+ * served by a single selector thread, reading into one direct buffer, so no memory is allocated per key press.
+ */
+public class NetworkInputManager implements Runnable {
+
+    /**
+     * The size of the shared read buffer (the maximum number of bytes read from a connection at once).
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The marker of a connection that did not send its player id yet.
+     */
+    private static final int NO_PLAYER = -1;
+
+    private final Logger logger;
+    private final Config config;
+    private final AtomicReferenceArray<Player> players;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    /**
+     * True iff the network thread should be terminated.
+     */
+    private volatile boolean terminate;
+
+    /**
+     * Statistics (written by the network thread only).
+     */
+    private volatile long connections;
+    private volatile long presses;
+    private volatile long rejected;
+
+    /**
+     * The state of a single remote connection (attached to its selection key).
+     */
+    private static class Connection {
+        private int player = NO_PLAYER;
+    }
+
+    public NetworkInputManager(Logger logger, Config config, AtomicReferenceArray<Player> players) throws IOException {
+        if (config.tableSize > 0xFF)
+            throw new IllegalArgumentException("table size " + config.tableSize + " does not fit the network protocol.");
+        this.logger = logger;
+        this.config = config;
+        this.players = players;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(new InetSocketAddress(config.networkAddress, config.networkPort), 1024);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * The network thread starts here (main loop of the selector).
+     */
+    @Override
+    public void run() {
+        logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " listening on port " + getPort() + ".");
+        while (!terminate) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                logger.severe("network selector failed: " + e.getMessage());
+                break;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) continue;
+                if (key.isAcceptable()) accept();
+                else if (key.isReadable()) read(key);
+            }
+        }
+        close();
+        logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated. connections: " + connections
+                + " presses: " + presses + " rejected: " + rejected);
+    }
+
+    /**
+     * Called when the network input should be terminated.
+     */
+    public void terminate() {
+        terminate = true;
+        selector.wakeup();
+    }
+
+    /**
+     * @return - the local port the server is bound to.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.register(selector, SelectionKey.OP_READ, new Connection());
+                connections++;
+            }
+        } catch (IOException e) {
+            logger.severe("cannot accept a remote connection: " + e.getMessage());
+        }
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        ((Buffer) readBuffer).clear(); // Buffer methods (java 8 compatible)
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            disconnect(key);
+            return;
+        }
+        ((Buffer) readBuffer).flip();
+        while (readBuffer.hasRemaining()) {
+            int value = readBuffer.get() & 0xFF;
+            if (connection.player == NO_PLAYER) {
+                if (value >= config.humanPlayers) { // computer players take no input
+                    rejected++;
+                    disconnect(key);
+                    return;
+                }
+                connection.player = value;
+            } else {
+                Player player = value < config.tableSize ? players.get(connection.player) : null;
+                if (player != null) {
+                    presses++;
+                    player.keyPressed(value);
+                } else rejected++;
+            }
+        }
+    }
+
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {}
+    }
+
+    private void close() {
+        for (SelectionKey key : selector.keys())
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {}
+        try {
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+}
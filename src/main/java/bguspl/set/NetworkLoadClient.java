@@ -0,0 +1,61 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A load generating client for NetworkInputManager. Opens many connections to the server and sends random key
+ * presses on all of them at a fixed total rate.
+ *
+ * Usage: NetworkLoadClient [host] [port] [connections] [players] [tableSize] [pressesPerSecond] [seconds]
+ */
+public class NetworkLoadClient {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int players = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int tableSize = args.length > 4 ? Integer.parseInt(args[4]) : 12;
+        long pressesPerSecond = args.length > 5 ? Long.parseLong(args[5]) : 100_000;
+        long seconds = args.length > 6 ? Long.parseLong(args[6]) : 10;
+
+        // connect and introduce each connection as one of the players
+        SocketChannel[] channels = new SocketChannel[connections];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1);
+        for (int i = 0; i < connections; i++) {
+            channels[i] = SocketChannel.open(new InetSocketAddress(host, port));
+            channels[i].socket().setTcpNoDelay(true);
+            ((Buffer) buffer).clear();
+            ((Buffer) buffer.put((byte) (i % players))).flip();
+            while (buffer.hasRemaining()) channels[i].write(buffer);
+        }
+        System.out.println("connected " + connections + " clients to " + host + ":" + port);
+
+        // send the presses in batches of one millisecond
+        long sent = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            long due = (System.nanoTime() - start) * pressesPerSecond / 1_000_000_000L;
+            for (; sent < due; sent++) {
+                SocketChannel channel = channels[(int) (sent % connections)];
+                ((Buffer) buffer).clear();
+                ((Buffer) buffer.put((byte) random.nextInt(tableSize))).flip();
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+            Thread.sleep(1);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        for (SocketChannel channel : channels)
+            channel.close();
+        System.out.printf("sent %d presses in %.2f seconds (%.0f presses per second)%n", sent, elapsed, sent / elapsed);
+    }
+}
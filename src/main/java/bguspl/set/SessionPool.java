@@ -0,0 +1,146 @@
+package bguspl.set;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed pool of threads that runs the long-lived tasks of the games of a session (the dealer, the players and the
+ * computer players), so that every game after the first one runs on threads that already exist and are warmed up.
+ * A task is started, interrupted and joined like a thread, and its pool thread takes the task's name while it runs.
+ */
+public class SessionPool {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param threads - the number of threads (the maximum number of tasks that run at once).
+     */
+    public SessionPool(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "session-pool");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Runs a task on a thread of the pool.
+     * @param target - the task.
+     * @param name   - the name of the thread while it runs the task.
+     * @return       - the started task.
+     */
+    public Task start(Runnable target, String name) {
+        Task task = new Task(target, name);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Stops the threads of the pool (the running tasks are interrupted).
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A task running on a thread of the pool.
+     */
+    public static class Task implements Runnable {
+
+        private final Runnable target;
+        private final String name;
+
+        /**
+         * The thread running the task (null before it starts and after it ends), whether the task was interrupted and
+         * whether it ended (guarded by this).
+         */
+        private Thread thread;
+        private boolean interrupted;
+        private boolean done;
+
+        private Task(Runnable target, String name) {
+            this.target = target;
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            Thread current = Thread.currentThread();
+            String poolName = current.getName();
+            synchronized (this) {
+                thread = current;
+                if (interrupted) current.interrupt(); // interrupted before it started
+            }
+            current.setName(name);
+            try {
+                target.run();
+            } finally {
+                current.setName(poolName);
+                synchronized (this) {
+                    thread = null;
+                    done = true;
+                    //noinspection ResultOfMethodCallIgnored
+                    Thread.interrupted(); // the thread returns to the pool without the interrupt of the task
+                    notifyAll();
+                }
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Interrupts the thread running the task (or the task as soon as it starts).
+         */
+        public synchronized void interrupt() {
+            interrupted = true;
+            if (thread != null) thread.interrupt();
+        }
+
+        /**
+         * @return - true iff the thread running the task is the calling thread.
+         */
+        public synchronized boolean isCurrent() {
+            return thread == Thread.currentThread();
+        }
+
+        /**
+         * @return - true iff the task did not end yet.
+         */
+        public synchronized boolean isAlive() {
+            return !done;
+        }
+
+        /**
+         * @return - the state and the current frame of the thread running the task.
+         */
+        public synchronized String describe() {
+            if (thread == null) return done ? "TERMINATED" : "NEW";
+            StackTraceElement[] stack = thread.getStackTrace();
+            return thread.getState() + (stack.length > 0 ? " at " + stack[0] : "");
+        }
+
+        /**
+         * Waits for the task to end.
+         * @throws InterruptedException - if the calling thread is interrupted while waiting.
+         */
+        public synchronized void join() throws InterruptedException {
+            while (!done) wait();
+        }
+
+        /**
+         * Waits at most the timeout for the task to end.
+         * @param timeoutNanos - the maximum time to wait.
+         * @throws InterruptedException - if the calling thread is interrupted while waiting.
+         */
+        public synchronized void join(long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            for (long remaining = timeoutNanos; !done && remaining > 0; remaining = deadline - System.nanoTime())
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+}
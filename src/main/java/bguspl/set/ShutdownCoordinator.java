@@ -0,0 +1,158 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stops a group of threads together, within a bounded time. All the threads are signalled at once: first their stop
+ * flags are set, and then they are interrupted, which cancels any blocking wait (a thread that was not waiting yet sees
+ * its flag, or fails its next wait immediately). Then all of them are joined against a single deadline, so stopping
+ * takes as long as the slowest thread (at most the timeout) rather than the sum over the threads.
+ * The threads that did not stop by the deadline are reported. Tasks running on the threads of a session pool are
+ * stopped the same way (the task is interrupted and waited for, and its thread stays in the pool).
+ */
+public class ShutdownCoordinator {
+
+    private final Logger logger;
+
+    /**
+     * A registered thread or pool task.
+     */
+    private interface Stoppable {
+        String getName();
+        void interrupt();
+        boolean isCurrent();
+        boolean isAlive();
+        void join(long timeoutNanos) throws InterruptedException;
+        String describe();
+    }
+
+    /**
+     * The registered threads and the signals that set their stop flags, in registration order.
+     */
+    private final List<Stoppable> threads = new ArrayList<>();
+    private final List<Runnable> signals = new ArrayList<>();
+
+    /**
+     * True iff the shutdown was started (threads registered later are signalled immediately).
+     */
+    private boolean stopping;
+
+    public ShutdownCoordinator(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Registers a thread to stop on shutdown.
+     * @param thread - the thread.
+     * @param signal - sets the stop flag the thread polls.
+     */
+    public void register(Thread thread, Runnable signal) {
+        register(new Stoppable() {
+            public String getName() {
+                return thread.getName();
+            }
+
+            public void interrupt() {
+                thread.interrupt();
+            }
+
+            public boolean isCurrent() {
+                return thread == Thread.currentThread();
+            }
+
+            public boolean isAlive() {
+                return thread.isAlive();
+            }
+
+            public void join(long timeoutNanos) throws InterruptedException {
+                TimeUnit.NANOSECONDS.timedJoin(thread, timeoutNanos);
+            }
+
+            public String describe() {
+                StackTraceElement[] stack = thread.getStackTrace();
+                return thread.getState() + (stack.length > 0 ? " at " + stack[0] : "");
+            }
+        }, signal);
+    }
+
+    /**
+     * Registers a task running on a thread of a session pool to stop on shutdown.
+     * @param task   - the task.
+     * @param signal - sets the stop flag the task polls.
+     */
+    public void register(SessionPool.Task task, Runnable signal) {
+        register(new Stoppable() {
+            public String getName() {
+                return task.getName();
+            }
+
+            public void interrupt() {
+                task.interrupt();
+            }
+
+            public boolean isCurrent() {
+                return task.isCurrent();
+            }
+
+            public boolean isAlive() {
+                return task.isAlive();
+            }
+
+            public void join(long timeoutNanos) throws InterruptedException {
+                task.join(timeoutNanos);
+            }
+
+            public String describe() {
+                return task.describe();
+            }
+        }, signal);
+    }
+
+    private void register(Stoppable thread, Runnable signal) {
+        synchronized (this) {
+            threads.add(thread);
+            signals.add(signal);
+            if (!stopping) return;
+        }
+        signal.run();
+        thread.interrupt();
+    }
+
+    /**
+     * Signals all the registered threads (in reverse order of registration) and waits for them to stop.
+     * @param timeoutMillis - the maximum time to wait for all the threads.
+     * @return              - the names of the threads that did not stop in time (empty if all of them stopped).
+     * @throws InterruptedException - if the calling thread is interrupted while waiting.
+     */
+    public List<String> shutdown(long timeoutMillis) throws InterruptedException {
+        List<Stoppable> stopped = new ArrayList<>();
+        List<Runnable> flags;
+        synchronized (this) {
+            stopping = true;
+            for (int i = threads.size() - 1; i >= 0; i--)
+                stopped.add(threads.get(i));
+            flags = new ArrayList<>(signals);
+        }
+        for (int i = flags.size() - 1; i >= 0; i--)
+            flags.get(i).run();
+        for (Stoppable thread : stopped)
+            if (!thread.isCurrent()) thread.interrupt();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<String> alive = new ArrayList<>();
+        for (Stoppable thread : stopped) {
+            if (thread.isCurrent()) continue;
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) thread.join(remaining);
+            if (thread.isAlive()) {
+                alive.add(thread.getName());
+                logger.severe("thread " + thread.getName() + " did not stop within " + timeoutMillis + " ms (" +
+                        thread.describe() + ")");
+            }
+        }
+        return alive;
+    }
+}
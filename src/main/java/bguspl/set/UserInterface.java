@@ -18,6 +18,19 @@ public interface UserInterface {
      */
     void removeCard(int slot);
 
+    /**
+     * Draw the card images of several slots at once, and remove all the players names text from them.
+     * @param slots - the slot numbers (for grid; slot = row*row.length + column).
+     * @param cards - the card id for each slot (-1 to draw an empty card image).
+     */
+    default void updateSlots(int[] slots, int[] cards) {
+        for (int i = 0; i < slots.length; i++) {
+            removeTokens(slots[i]);
+            if (cards[i] < 0) removeCard(slots[i]);
+            else placeCard(cards[i], slots[i]);
+        }
+    }
+
     /**
      * Draw a player name text in the specified slot.
      * @param player - the card id.
@@ -56,6 +69,19 @@ public interface UserInterface {
      */
     void setElapsed(long millies);
 
+    /**
+     * Set the timer to run by itself from a reference time (until the next timer update), instead of being set to
+     * each value. A user interface that does not render the timer by itself only shows its current value.
+     * @param reference  - the deadline of the countdown, or the start time of the elapsed time (in epoch millis).
+     * @param warnMillis - the remaining milliseconds from which the countdown is shown with a warning.
+     * @param countdown  - true for a countdown to the reference time, false for the time elapsed since it.
+     */
+    default void setTimer(long reference, long warnMillis, boolean countdown) {
+        long now = System.currentTimeMillis();
+        if (countdown) setCountdown(Math.max(reference - now, 0), reference - now <= warnMillis);
+        else setElapsed(now - reference);
+    }
+
     /**
      * Set the player text in the score panel to show remaining freeze time.
      * If milliseconds > 0, show player name in red, and add freeze time.
@@ -80,6 +106,13 @@ public interface UserInterface {
      */
     void announceWinner(int[] players);
 
+    /**
+     * Show the player score panel and the timer again (hiding the winner announcement), for a new game in the same
+     * user interface. The scores and the freezes are reset by the new game.
+     */
+    default void newGame() {
+    }
+
     /**
      * Programmatically closes the window.
      */
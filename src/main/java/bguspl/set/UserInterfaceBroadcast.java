@@ -0,0 +1,476 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A UserInterface that broadcasts the game state to remote spectators (and forwards every call to an inner ui).
+ *
+ * Every ui call is encoded once, as a compact binary delta, into a shared circular log. A single broadcast thread
+ * copies the log to all the subscribers, so the game threads do not pay anything per subscriber. Every
+ * KEYFRAME_MILLIS (and whenever a spectator joins) a keyframe with the full state is written to the log, and new
+ * subscribers start reading from it. A new game of the session also starts with a keyframe (of the empty state), so
+ * the spectators drop the cards, tokens, scores and timer of the previous game. A subscriber that falls behind by
+ * more than the log size is dropped. The server is bound to the configured local address (the loopback address by
+ * default), since the spectators are not authenticated.
+ *
+ * Frame format: a type byte followed by unsigned varint fields (see the frame type constants).
+ */
+public class UserInterfaceBroadcast implements UserInterface, Runnable {
+
+    /**
+     * Frame types.
+     */
+    public static final int KEYFRAME = 0;       // slots, (card + 1, token mask) per slot, players, (score, freeze) per player, timer, warn
+    public static final int PLACE_CARD = 1;     // slot, card
+    public static final int REMOVE_CARD = 2;    // slot
+    public static final int PLACE_TOKEN = 3;    // player, slot
+    public static final int REMOVE_TOKEN = 4;   // player, slot
+    public static final int REMOVE_TOKENS = 5;  // slot
+    public static final int CLEAR_TOKENS = 6;   // -
+    public static final int COUNTDOWN = 7;      // millies, warn
+    public static final int ELAPSED = 8;        // millies
+    public static final int FREEZE = 9;         // player, millies
+    public static final int SCORE = 10;         // player, score
+    public static final int WINNER = 11;        // count, players
+    public static final int SLOTS = 12;         // count, (slot, card + 1) per slot (also removes the slots tokens)
+    public static final int TIMER = 13;         // countdown, millies (remaining or elapsed when sent), warn millies
+
+    /**
+     * The size of the circular log (the maximum lag of a subscriber before it is dropped).
+     */
+    private static final int LOG_SIZE = 1 << 20;
+
+    /**
+     * The maximum size of a single frame.
+     */
+    private static final int MAX_FRAME_SIZE = 64 * 1024;
+
+    /**
+     * The interval between keyframes and between flushes of the log to the subscribers.
+     */
+    private static final long KEYFRAME_MILLIS = 1000;
+    private static final long FLUSH_MILLIS = 10;
+
+    private final Logger logger;
+    private final Config config;
+    private final UserInterface ui;
+
+    /**
+     * The game state as seen by the spectators (guarded by this).
+     */
+    private final int[] slotToCard;
+    private final long[] slotTokens;
+    private final int[] scores;
+    private final long[] freezes;
+    private long timer;
+    private boolean warn;
+    private long shownTimer = -1;
+
+    /**
+     * The timer set by setTimer (timerReference is 0 while the timer is set to fixed values).
+     */
+    private long timerReference;
+    private long timerWarnMillis;
+    private boolean timerCountdown;
+
+    /**
+     * The circular log of encoded frames and the scratch buffer a frame is encoded into (guarded by this).
+     */
+    private final byte[] log = new byte[LOG_SIZE];
+    private final byte[] frame = new byte[MAX_FRAME_SIZE];
+    private int frameLength;
+
+    /**
+     * The total number of bytes written to the log, and the position of the latest keyframe.
+     */
+    private volatile long written;
+    private volatile long keyframe;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private volatile boolean terminate;
+
+    /**
+     * The read position of a single subscriber in the log (attached to its selection key).
+     */
+    private static class Subscriber {
+        private long position;
+    }
+
+    public UserInterfaceBroadcast(Logger logger, Config config, UserInterface ui) throws IOException {
+        if (config.players > Long.SIZE)
+            throw new IllegalArgumentException("cannot broadcast more than " + Long.SIZE + " players.");
+        this.logger = logger;
+        this.config = config;
+        this.ui = ui;
+        slotToCard = new int[config.tableSize];
+        slotTokens = new long[config.tableSize];
+        scores = new int[config.players];
+        freezes = new long[config.players];
+        Arrays.fill(slotToCard, -1);
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(new InetSocketAddress(config.broadcastAddress, config.broadcastPort), 1024);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * The broadcast thread starts here: accepts subscribers and flushes the log to them.
+     */
+    @Override
+    public void run() {
+        logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " broadcasting on port " + getPort() + ".");
+        ByteBuffer view = ByteBuffer.wrap(log);
+        long nextKeyframe = System.currentTimeMillis() + KEYFRAME_MILLIS;
+        while (!terminate) {
+            try {
+                selector.select(FLUSH_MILLIS);
+            } catch (IOException e) {
+                logger.severe("broadcast selector failed: " + e.getMessage());
+                break;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid() && key.isAcceptable()) accept();
+            }
+            if (System.currentTimeMillis() >= nextKeyframe) {
+                writeKeyframe();
+                nextKeyframe = System.currentTimeMillis() + KEYFRAME_MILLIS;
+            }
+            flush(view);
+        }
+        flush(view);
+        close();
+        logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated. bytes broadcast: " + written);
+    }
+
+    /**
+     * @return - the local port spectators can connect to.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Subscriber subscriber = new Subscriber();
+                writeKeyframe();
+                subscriber.position = keyframe;
+                channel.register(selector, 0, subscriber);
+            }
+        } catch (IOException e) {
+            logger.severe("cannot accept a spectator: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copies the pending part of the log to every subscriber, dropping the ones that fell too far behind.
+     */
+    private void flush(ByteBuffer view) {
+        long end = written;
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid() || !(key.attachment() instanceof Subscriber)) continue;
+            Subscriber subscriber = (Subscriber) key.attachment();
+            SocketChannel channel = (SocketChannel) key.channel();
+            if (end - subscriber.position > LOG_SIZE) {
+                drop(key, "lagging behind");
+                continue;
+            }
+            try {
+                long start = subscriber.position;
+                while (subscriber.position < end) {
+                    int offset = (int) (subscriber.position % LOG_SIZE);
+                    int length = (int) Math.min(end - subscriber.position, LOG_SIZE - offset);
+                    ((Buffer) view).limit(offset + length).position(offset); // Buffer methods (java 8 compatible)
+                    int sent = channel.write(view);
+                    subscriber.position += sent;
+                    if (sent < length) break; // the socket buffer is full
+                }
+                if (written - LOG_SIZE > start) drop(key, "lagging behind"); // part of what was sent was overwritten
+            } catch (IOException e) {
+                drop(key, e.getMessage());
+            }
+        }
+    }
+
+    private void drop(SelectionKey key, String reason) {
+        logger.log(Level.INFO, "dropping spectator: " + reason);
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {}
+    }
+
+    private void close() {
+        for (SelectionKey key : selector.keys())
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {}
+        try {
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+
+    private synchronized void writeKeyframe() {
+        begin(KEYFRAME);
+        put(slotToCard.length);
+        for (int slot = 0; slot < slotToCard.length; slot++) {
+            put(slotToCard[slot] + 1);
+            put(slotTokens[slot]);
+        }
+        put(scores.length);
+        for (int player = 0; player < scores.length; player++) {
+            put(scores[player]);
+            put(freezes[player]);
+        }
+        put(timer);
+        put(warn ? 1 : 0);
+        keyframe = written;
+        commit();
+        if (timerReference != 0) writeTimer();
+    }
+
+    private void writeTimer() {
+        long now = System.currentTimeMillis();
+        begin(TIMER);
+        put(timerCountdown ? 1 : 0);
+        put(Math.max(timerCountdown ? timerReference - now : now - timerReference, 0));
+        put(timerWarnMillis);
+        commit();
+    }
+
+    /*
+     * Frame encoding (the caller must hold the lock of this).
+     */
+
+    private void begin(int type) {
+        frameLength = 0;
+        frame[frameLength++] = (byte) type;
+    }
+
+    private void put(long value) {
+        while ((value & ~0x7FL) != 0) {
+            frame[frameLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        frame[frameLength++] = (byte) value;
+    }
+
+    private void commit() {
+        long position = written;
+        int offset = (int) (position % LOG_SIZE);
+        int first = Math.min(frameLength, LOG_SIZE - offset);
+        System.arraycopy(frame, 0, log, offset, first);
+        System.arraycopy(frame, first, log, 0, frameLength - first);
+        written = position + frameLength;
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        synchronized (this) {
+            slotToCard[slot] = card;
+            begin(PLACE_CARD);
+            put(slot);
+            put(card);
+            commit();
+        }
+        if (ui != null) ui.placeCard(card, slot);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        synchronized (this) {
+            slotToCard[slot] = -1;
+            begin(REMOVE_CARD);
+            put(slot);
+            commit();
+        }
+        if (ui != null) ui.removeCard(slot);
+    }
+
+    @Override
+    public void updateSlots(int[] slots, int[] cards) {
+        synchronized (this) {
+            begin(SLOTS);
+            put(slots.length);
+            for (int i = 0; i < slots.length; i++) {
+                slotToCard[slots[i]] = cards[i];
+                slotTokens[slots[i]] = 0L;
+                put(slots[i]);
+                put(cards[i] + 1);
+            }
+            commit();
+        }
+        if (ui != null) ui.updateSlots(slots, cards);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        synchronized (this) {
+            slotTokens[slot] |= 1L << player;
+            begin(PLACE_TOKEN);
+            put(player);
+            put(slot);
+            commit();
+        }
+        if (ui != null) ui.placeToken(player, slot);
+    }
+
+    @Override
+    public void removeTokens() {
+        synchronized (this) {
+            Arrays.fill(slotTokens, 0L);
+            begin(CLEAR_TOKENS);
+            commit();
+        }
+        if (ui != null) ui.removeTokens();
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        synchronized (this) {
+            slotTokens[slot] = 0L;
+            begin(REMOVE_TOKENS);
+            put(slot);
+            commit();
+        }
+        if (ui != null) ui.removeTokens(slot);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        synchronized (this) {
+            slotTokens[slot] &= ~(1L << player);
+            begin(REMOVE_TOKEN);
+            put(player);
+            put(slot);
+            commit();
+        }
+        if (ui != null) ui.removeToken(player, slot);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        synchronized (this) {
+            timer = millies;
+            timerReference = 0;
+            long shown = warn ? millies / 10 : millies / 1000; // only send what changes the display
+            if (shown != shownTimer || warn != this.warn) {
+                shownTimer = shown;
+                this.warn = warn;
+                begin(COUNTDOWN);
+                put(millies);
+                put(warn ? 1 : 0);
+                commit();
+            }
+        }
+        if (ui != null) ui.setCountdown(millies, warn);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        synchronized (this) {
+            timer = millies;
+            timerReference = 0;
+            warn = false;
+            long shown = millies / 1000;
+            if (shown != shownTimer) {
+                shownTimer = shown;
+                begin(ELAPSED);
+                put(millies);
+                commit();
+            }
+        }
+        if (ui != null) ui.setElapsed(millies);
+    }
+
+    @Override
+    public void setTimer(long reference, long warnMillis, boolean countdown) {
+        synchronized (this) {
+            timerReference = reference;
+            timerWarnMillis = warnMillis;
+            timerCountdown = countdown;
+            shownTimer = -1;
+            writeTimer();
+        }
+        if (ui != null) ui.setTimer(reference, warnMillis, countdown);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        synchronized (this) {
+            freezes[player] = Math.max(millies, 0);
+            begin(FREEZE);
+            put(player);
+            put(freezes[player]);
+            commit();
+        }
+        if (ui != null) ui.setFreeze(player, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        synchronized (this) {
+            scores[player] = score;
+            begin(SCORE);
+            put(player);
+            put(score);
+            commit();
+        }
+        if (ui != null) ui.setScore(player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        synchronized (this) {
+            begin(WINNER);
+            put(players.length);
+            for (int player : players)
+                put(player);
+            commit();
+        }
+        if (ui != null) ui.announceWinner(players);
+    }
+
+    @Override
+    public void newGame() {
+        synchronized (this) {
+            Arrays.fill(slotToCard, -1);
+            Arrays.fill(slotTokens, 0L);
+            Arrays.fill(scores, 0);
+            Arrays.fill(freezes, 0L);
+            timer = 0;
+            warn = false;
+            shownTimer = -1;
+            timerReference = 0;
+            writeKeyframe();
+        }
+        if (ui != null) ui.newGame();
+    }
+
+    @Override
+    public void dispose() {
+        terminate = true;
+        selector.wakeup();
+        if (ui != null) ui.dispose();
+    }
+}
@@ -2,6 +2,7 @@ package bguspl.set;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -33,9 +34,16 @@ public class UserInterfaceDecorator implements UserInterface {
         if (ui != null) ui.removeCard(slot);
     }
 
+    @Override
+    public void updateSlots(int[] slots, int[] cards) {
+        logger.severe("placing cards " + Arrays.toString(cards) + " in slots " + Arrays.toString(slots));
+        util.spin();
+        if (ui != null) ui.updateSlots(slots, cards);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
-        logger.severe("player " + (player + 1) + " placing token on slot " + slot);
+        if (logger.isLoggable(Level.FINE)) logger.fine("player " + (player + 1) + " placing token on slot " + slot);
         util.spin();
         if (ui != null) ui.placeToken(player, slot);
     }
@@ -56,7 +64,7 @@ public class UserInterfaceDecorator implements UserInterface {
 
     @Override
     public void removeToken(int player, int slot) {
-        logger.severe("removing player " + (player + 1) + " token from slot " + slot);
+        if (logger.isLoggable(Level.FINE)) logger.fine("removing player " + (player + 1) + " token from slot " + slot);
         util.spin();
         if (ui != null) ui.removeToken(player, slot);
     }
@@ -75,16 +83,23 @@ public class UserInterfaceDecorator implements UserInterface {
         if (ui != null) ui.setElapsed(millies);
     }
 
+    @Override
+    public void setTimer(long reference, long warnMillis, boolean countdown) {
+        logger.severe("setting the timer to " + (countdown ? "count down to " : "count up from ") + reference);
+        util.spin();
+        if (ui != null) ui.setTimer(reference, warnMillis, countdown);
+    }
+
     @Override
     public void setFreeze(int player, long millies) {
-        logger.severe("setting player " + (player + 1) + " freeze to " + millies);
+        if (logger.isLoggable(Level.FINE)) logger.fine("setting player " + (player + 1) + " freeze to " + millies);
         util.spin();
         if (ui != null) ui.setFreeze(player, millies);
     }
 
     @Override
     public void setScore(int player, int score) {
-        logger.severe("setting player " + (player + 1) + " score to " + score);
+        if (logger.isLoggable(Level.FINE)) logger.fine("setting player " + (player + 1) + " score to " + score);
         util.spin();
         if (ui != null) ui.setScore(player, score);
     }
@@ -96,6 +111,12 @@ public class UserInterfaceDecorator implements UserInterface {
         if (ui != null) ui.announceWinner(players);
     }
 
+    @Override
+    public void newGame() {
+        logger.severe("starting a new game");
+        if (ui != null) ui.newGame();
+    }
+
     @Override
     public void dispose() {
         logger.severe("disposing of user interface elements");
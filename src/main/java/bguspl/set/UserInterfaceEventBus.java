@@ -0,0 +1,146 @@
+package bguspl.set;
+
+/**
+ * A user interface that publishes every call as an event to an EventBus, instead of calling the sinks (the screen,
+ * the log, the broadcast etc.) on the game threads. Each call costs one publish, however many sinks consume the bus.
+ */
+public class UserInterfaceEventBus implements UserInterface {
+
+    /**
+     * The maximum time to wait for the consumers to replay the remaining events when the game ends.
+     */
+    private static final long SHUTDOWN_MILLIS = 2000;
+
+    private final EventBus bus;
+
+    public UserInterfaceEventBus(EventBus bus) {
+        this.bus = bus;
+    }
+
+    private GameEvent event(long sequence, GameEvent.Type type) {
+        GameEvent event = bus.get(sequence);
+        event.type = type;
+        return event;
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        long sequence = bus.next();
+        GameEvent event = event(sequence, GameEvent.Type.PLACE_CARD);
+        event.card = card;
+        event.slot = slot;
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        long sequence = bus.next();
+        event(sequence, GameEvent.Type.REMOVE_CARD).slot = slot;
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void updateSlots(int[] slots, int[] cards) {
+        long sequence = bus.next();
+        event(sequence, GameEvent.Type.UPDATE_SLOTS).setArrays(slots, cards);
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        long sequence = bus.next();
+        GameEvent event = event(sequence, GameEvent.Type.PLACE_TOKEN);
+        event.player = player;
+        event.slot = slot;
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void removeTokens() {
+        long sequence = bus.next();
+        event(sequence, GameEvent.Type.REMOVE_ALL_TOKENS);
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        long sequence = bus.next();
+        event(sequence, GameEvent.Type.REMOVE_TOKENS).slot = slot;
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        long sequence = bus.next();
+        GameEvent event = event(sequence, GameEvent.Type.REMOVE_TOKEN);
+        event.player = player;
+        event.slot = slot;
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        long sequence = bus.next();
+        GameEvent event = event(sequence, GameEvent.Type.COUNTDOWN);
+        event.millies = millies;
+        event.flag = warn;
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        long sequence = bus.next();
+        event(sequence, GameEvent.Type.ELAPSED).millies = millies;
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void setTimer(long reference, long warnMillis, boolean countdown) {
+        long sequence = bus.next();
+        GameEvent event = event(sequence, GameEvent.Type.TIMER);
+        event.millies = reference;
+        event.warnMillis = warnMillis;
+        event.flag = countdown;
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        long sequence = bus.next();
+        GameEvent event = event(sequence, GameEvent.Type.FREEZE);
+        event.player = player;
+        event.millies = millies;
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        long sequence = bus.next();
+        GameEvent event = event(sequence, GameEvent.Type.SCORE);
+        event.player = player;
+        event.card = score;
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        long sequence = bus.next();
+        event(sequence, GameEvent.Type.WINNER).setArrays(null, players);
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void newGame() {
+        long sequence = bus.next();
+        event(sequence, GameEvent.Type.NEW_GAME);
+        bus.publish(sequence);
+    }
+
+    @Override
+    public void dispose() {
+        long sequence = bus.next();
+        event(sequence, GameEvent.Type.DISPOSE);
+        bus.publish(sequence);
+        bus.shutdown(SHUTDOWN_MILLIS);
+    }
+}
@@ -2,12 +2,19 @@ package bguspl.set;
 
 import bguspl.set.ex.Player;
 
+import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -25,10 +32,13 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final Config config;
 
     static String intInBaseToPaddedString(int n, int padding, int base) {
-        return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
+        char[] digits = new char[padding];
+        for (int i = padding - 1; i >= 0; --i, n /= base)
+            digits[i] = Character.forDigit(n % base, base);
+        return new String(digits);
     }
 
-    public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+    public UserInterfaceSwing(Logger logger, Config config, AtomicReferenceArray<Player> players) {
 
         this.config = config;
         timerPanel = new TimerPanel();
@@ -71,8 +81,21 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     private class TimerPanel extends JPanel {
 
+        /**
+         * The period of the timer display updates when the timer runs by itself (about the display rate).
+         */
+        private static final int TICK_MILLIS = 16;
+
         private final JLabel timerField;
 
+        /**
+         * Renders the running timer on the event dispatch thread, from the reference time set by setTimer.
+         */
+        private final Timer ticker;
+        private volatile long reference;
+        private volatile long warnMillis;
+        private volatile boolean countdown;
+
         private String generateTime(long millies, boolean warn) {
             if (warn)
                 return format("Remaining Time: %.2f", (double) millies / 1000.0f);
@@ -88,22 +111,64 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             timerField.setForeground(Color.BLACK);
 
             add(timerField);
+
+            ticker = new Timer(TICK_MILLIS, event -> tick());
+            ticker.setCoalesce(true);
         }
 
         private void setCountdown(long millies, boolean warn) {
-            timerField.setText(generateTime(millies, warn));
-            timerField.setForeground(warn ? Color.RED : Color.BLACK);
+            ticker.stop();
+            showCountdown(millies, warn);
         }
 
         private void setElapsed(long millies) {
-            timerField.setText("Elapsed time: " + millies / 1000);
+            ticker.stop();
+            showElapsed(millies);
+        }
+
+        private void reset() {
+            ticker.stop();
+            timerField.setText(config.turnTimeoutMillis < 0 ? "PLAY" : "GET READY...");
+            timerField.setForeground(Color.BLACK);
+        }
+
+        private void setTimer(long reference, long warnMillis, boolean countdown) {
+            this.reference = reference;
+            this.warnMillis = warnMillis;
+            this.countdown = countdown;
+            ticker.start();
+        }
+
+        private void tick() {
+            if (!ticker.isRunning()) return; // stopped by an explicit value after this tick was queued
+            long now = System.currentTimeMillis();
+            if (!countdown) {
+                showElapsed(now - reference);
+                return;
+            }
+            long remaining = Math.max(reference - now, 0);
+            showCountdown(remaining, remaining <= warnMillis);
+            if (remaining == 0) ticker.stop();
+        }
+
+        private void showCountdown(long millies, boolean warn) {
+            showText(generateTime(millies, warn));
+            timerField.setForeground(warn ? Color.RED : Color.BLACK);
+        }
+
+        private void showElapsed(long millies) {
+            showText("Elapsed time: " + millies / 1000);
+        }
+
+        private void showText(String text) {
+            if (!text.equals(timerField.getText())) timerField.setText(text);
         }
     }
 
     private class GamePanel extends JLayeredPane {
 
         private final Image emptyCard;
-        private final Image[] deck;
+        private final AtomicReferenceArray<Image> deck;
         private final Image[][] grid;
         private final boolean[][][] playerTokens;
         private final JLabel[][] tokenText;
@@ -112,7 +177,45 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             URL imageResource = getClass().getClassLoader().getResource(filename);
             if (imageResource == null)
                 throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
+            try {
+                return ImageIO.read(imageResource);
+            } catch (IOException e) {
+                throw new UncheckedIOException(filename, e);
+            }
+        }
+
+        /**
+         * Decodes the card images in the background, in parallel (they are decoded on demand if needed sooner).
+         */
+        private void loadCardImages() {
+            AtomicInteger threads = new AtomicInteger();
+            ExecutorService loader = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "card-images-" + threads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < config.deckSize; ++i) {
+                int card = i;
+                loader.execute(() -> {
+                    try {
+                        cardImage(card);
+                    } catch (RuntimeException ignored) {} // reported when the card is placed
+                });
+            }
+            loader.shutdown();
+        }
+
+        /**
+         * @return - the image of the card, decoding it now if it was not loaded yet.
+         */
+        private Image cardImage(int card) {
+            Image image = deck.get(card);
+            if (image == null) {
+                image = loadImageResource("cards/" + intInBaseToPaddedString(card, config.featureCount, config.featureSize) + ".png");
+                if (!deck.compareAndSet(card, null, image))
+                    image = deck.get(card);
+            }
+            return image;
         }
 
         private GamePanel() {
@@ -122,11 +225,10 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             // init deck and load all pictures from png files
             assert config.featureSize < 10; // otherwise there will be naming conflicts
 
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
+            // load the image resources (the cards in the background, the table starts with empty cards)
+            deck = new AtomicReferenceArray<>(config.deckSize);
             emptyCard = loadImageResource("cards/empty_card.png");
+            loadCardImages();
 
             grid = new Image[config.rows][config.columns];
             tokenText = new JLabel[config.rows][config.columns];
@@ -151,7 +253,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private void placeCard(int slot, int card) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = deck[card];
+            grid[row][column] = cardImage(card);
             validate();
             repaint();
         }
@@ -164,6 +266,19 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             repaint();
         }
 
+        private void updateSlots(int[] slots, int[] cards) {
+            for (int i = 0; i < slots.length; i++) {
+                int row = slots[i] / config.columns;
+                int column = slots[i] % config.columns;
+                grid[row][column] = cards[i] < 0 ? emptyCard : cardImage(cards[i]);
+                for (int player = 0; player < playerTokens.length; player++)
+                    playerTokens[player][row][column] = false;
+                tokenText[row][column].setText("");
+            }
+            validate();
+            repaint();
+        }
+
         private void placeToken(int player, int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
@@ -284,6 +399,11 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         gamePanel.removeCard(slot);
     }
 
+    @Override
+    public void updateSlots(int[] slots, int[] cards) {
+        gamePanel.updateSlots(slots, cards);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
         gamePanel.placeToken(player, slot);
@@ -314,6 +434,11 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         timerPanel.setElapsed(millies);
     }
 
+    @Override
+    public void setTimer(long reference, long warnMillis, boolean countdown) {
+        timerPanel.setTimer(reference, warnMillis, countdown);
+    }
+
     @Override
     public void setFreeze(int player, long millies) {
         playersPanel.setFreeze(player, millies);
@@ -331,6 +456,14 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         winnerPanel.setVisible(true);
     }
 
+    @Override
+    public void newGame() {
+        winnerPanel.setVisible(false);
+        timerPanel.reset();
+        timerPanel.setVisible(true);
+        playersPanel.setVisible(true);
+    }
+
     @Override
     public void dispose() {
         super.dispose();
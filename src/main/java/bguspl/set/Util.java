@@ -31,6 +31,14 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Finds the card that completes the given cards to a legal set.
+     *
+     * @param cards - an array of featureSize - 1 card ids.
+     * @return - the card id that forms a legal set with the given cards, or -1 if there is no such card.
+     */
+    int completeSet(int[] cards);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +48,81 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * A callback for the sets enumerated by forEachSet.
+     */
+    @FunctionalInterface
+    interface SetVisitor {
+
+        /**
+         * Visits a legal set.
+         *
+         * @param cards - the card ids of the set, sorted (the array is reused, copy it to keep it).
+         * @return - true to continue the enumeration, false to stop it.
+         */
+        boolean visit(int[] cards);
+    }
+
+    /**
+     * Enumerates the sets in the given cards (in the same order as findSets), without collecting them.
+     *
+     * @param deck    - an array of card ids.
+     * @param visitor - the callback called for every set, until it returns false.
+     * @return - false iff the visitor stopped the enumeration.
+     */
+    boolean forEachSet(int[] deck, SetVisitor visitor);
+
+    /**
+     * Enumerates the sets in the first cards of an array (e.g. a reused buffer), without copying them.
+     *
+     * @param deck    - an array of card ids.
+     * @param length  - the number of cards (from the start of the array) to search.
+     * @param visitor - the callback called for every set, until it returns false.
+     * @return - false iff the visitor stopped the enumeration.
+     * @see #forEachSet(int[], SetVisitor)
+     */
+    boolean forEachSet(int[] deck, int length, SetVisitor visitor);
+
+    /**
+     * @see #forEachSet(int[], SetVisitor)
+     */
+    boolean forEachSet(List<Integer> deck, SetVisitor visitor);
+
+    /**
+     * Checks if there is at least one legal set in the given cards.
+     *
+     * @param deck - an array of card ids.
+     * @return - true iff the cards contain a legal set.
+     */
+    boolean anySet(int[] deck);
+
+    /**
+     * Checks if there is at least one legal set in the first cards of an array (e.g. a reused buffer).
+     *
+     * @param deck   - an array of card ids.
+     * @param length - the number of cards (from the start of the array) to search.
+     * @return - true iff the cards contain a legal set.
+     */
+    boolean anySet(int[] deck, int length);
+
+    /**
+     * @see #anySet(int[])
+     */
+    boolean anySet(List<Integer> deck);
+
+    /**
+     * Counts the legal sets in the given cards.
+     *
+     * @param deck - an array of card ids.
+     * @return - the number of legal sets.
+     */
+    long countSets(int[] deck);
+
+    /**
+     * @see #countSets(int[])
+     */
+    long countSets(List<Integer> deck);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -1,9 +1,13 @@
 package bguspl.set;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 /**
@@ -11,10 +15,27 @@ import java.util.stream.IntStream;
  */
 public class UtilImpl implements Util {
 
+    /**
+     * The deck size from which findSets, anySet and countSets search in parallel (forEachSet calls its visitor in order,
+     * on the calling thread), and the number of leading positions searched by one task.
+     */
+    private static final int PARALLEL_THRESHOLD = 512;
+    private static final int LEADING_SPLIT = 8;
+
     private final Config config;
 
+    /**
+     * The precomputed completing card of every pair of cards (null if not available).
+     */
+    private final CompletionTable completionTable;
+
     public UtilImpl(Config config) {
+        this(config, null);
+    }
+
+    public UtilImpl(Config config, CompletionTable completionTable) {
         this.config = config;
+        this.completionTable = completionTable;
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -40,46 +61,208 @@ public class UtilImpl implements Util {
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
+        if (completionTable != null && cards.length == 3)
+            return completionTable.complete(cards[0], cards[1]) == cards[2];
+        // the features are read from the cards in place, so testing a claimed set does not allocate
+        for (int i = 0, weight = 1; i < config.featureCount; ++i, weight *= config.featureSize) {
             boolean sameSame = true, butDifferent = true;
 
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
-
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
-                    }
+            // check if this feature is sameSame in all cards, or butDifferent in all cards
+            for (int j = 1; j < cards.length; ++j)
+                for (int k = 0; k < j; ++k)
+                    if (feature(cards[j], weight) == feature(cards[k], weight)) butDifferent = false;
+                    else sameSame = false;
 
             if (sameSame == butDifferent) return false;
         }
         return true;
     }
 
+    /**
+     * @param card   - a card.
+     * @param weight - the weight of the feature in the card (a power of featureSize).
+     * @return       - the value of the feature of the card.
+     */
+    private int feature(int card, int weight) {
+        return card / weight % config.featureSize;
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        if (cards.length < 2) return -1; // with less than 3 cards per set the completing card is not unique
+        if (completionTable != null && cards.length == 2) return completionTable.complete(cards[0], cards[1]);
+        int[][] features = cardsToFeatures(cards);
+        int card = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int value = completeFeature(features, i);
+            if (value < 0) return -1;
+            card = card * config.featureSize + value;
+        }
+        return card;
+    }
+
+    /**
+     * @return - the value of the feature that completes the given cards to a legal set, or -1 if there is none.
+     */
+    private int completeFeature(int[][] features, int feature) {
+        boolean sameSame = true;
+        int seen = 0, sum = 0;
+        for (int[] card : features) {
+            int value = card[feature];
+            if (value != features[0][feature]) sameSame = false;
+            seen |= 1 << value;
+            sum += value;
+        }
+        if (sameSame) return features[0][feature];
+        if (Integer.bitCount(seen) != features.length) return -1; // neither all the same nor all different
+        return config.featureSize * (config.featureSize - 1) / 2 - sum;
+    }
+
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
+        FlightEvents.FindSets event = new FlightEvents.FindSets();
+        event.begin();
+        int[] cards = toArray(deck);
+        List<int[]> sets = findSets(cards, cards.length, count);
+        if (event.shouldCommit()) {
+            event.deckSize = deck.size();
+            event.count = count;
+            event.found = sets.size();
+            event.commit();
+        }
+        return sets;
+    }
+
+    private List<int[]> findSets(int[] cards, int length, int count) {
+        if (!sliceable(length)) {
+            List<int[]> sets = new LinkedList<>();
+            forEachSetScalar(cards, length, set -> {
+                sets.add(set.clone());
+                return sets.size() < count;
+            });
+            return sets;
+        }
+        SlicedDeck sliced = new SlicedDeck(cards, length);
+        if (!parallel(length)) return sliced.collect(0, length, count, new AtomicInteger());
+        return ForkJoinPool.commonPool().invoke(new SearchTask(sliced, 0, length, count, new AtomicInteger()));
+    }
+
+    @Override
+    public boolean forEachSet(int[] deck, SetVisitor visitor) {
+        return forEachSet(deck, deck.length, visitor);
+    }
+
+    @Override
+    public boolean forEachSet(int[] deck, int length, SetVisitor visitor) {
+        FlightEvents.FindSets event = new FlightEvents.FindSets();
+        event.begin();
+        boolean completed = !sliceable(length) ? forEachSetScalar(deck, length, visitor)
+                : new SlicedDeck(deck, length).forEach(0, length, visitor, new int[config.featureSize]);
+        if (event.shouldCommit()) {
+            event.deckSize = length;
+            event.count = completed ? Integer.MAX_VALUE : -1;
+            event.found = -1;
+            event.commit();
+        }
+        return completed;
+    }
+
+    @Override
+    public boolean forEachSet(List<Integer> deck, SetVisitor visitor) {
+        return forEachSet(toArray(deck), visitor);
+    }
+
+    @Override
+    public boolean anySet(int[] deck) {
+        return anySet(deck, deck.length);
+    }
+
+    @Override
+    public boolean anySet(int[] deck, int length) {
+        if (!parallel(length)) return !forEachSet(deck, length, set -> false);
+        FlightEvents.FindSets event = new FlightEvents.FindSets();
+        event.begin();
+        boolean any = !findSets(deck, length, 1).isEmpty();
+        if (event.shouldCommit()) {
+            event.deckSize = length;
+            event.count = 1;
+            event.found = any ? 1 : 0;
+            event.commit();
+        }
+        return any;
+    }
+
+    @Override
+    public boolean anySet(List<Integer> deck) {
+        return anySet(toArray(deck));
+    }
+
+    @Override
+    public long countSets(int[] deck) {
+        FlightEvents.FindSets event = new FlightEvents.FindSets();
+        event.begin();
+        long count;
+        if (parallel(deck.length))
+            count = ForkJoinPool.commonPool().invoke(new CountTask(new SlicedDeck(deck, deck.length), 0, deck.length));
+        else if (sliceable(deck.length)) count = new SlicedDeck(deck, deck.length).count(0, deck.length);
+        else {
+            long[] counter = new long[1];
+            forEachSetScalar(deck, deck.length, set -> ++counter[0] > 0);
+            count = counter[0];
+        }
+        if (event.shouldCommit()) {
+            event.deckSize = deck.length;
+            event.count = Integer.MAX_VALUE;
+            event.found = (int) Math.min(count, Integer.MAX_VALUE);
+            event.commit();
+        }
+        return count;
+    }
+
+    @Override
+    public long countSets(List<Integer> deck) {
+        return countSets(toArray(deck));
+    }
+
+    private static int[] toArray(List<Integer> deck) {
+        int[] cards = new int[deck.size()];
+        for (int i = 0; i < cards.length; ++i)
+            cards[i] = deck.get(i);
+        return cards;
+    }
+
+    /**
+     * @return - true iff a deck of the given length can be searched with a SlicedDeck (which needs a unique completing
+     *           card).
+     */
+    private boolean sliceable(int length) {
+        return config.featureSize >= 3 && length >= config.featureSize;
+    }
+
+    /**
+     * @return - true iff a deck of the given length is large enough to be searched in parallel.
+     */
+    private boolean parallel(int length) {
+        return sliceable(length) && length >= PARALLEL_THRESHOLD;
+    }
+
+    /**
+     * Enumerates sets by testing every combination of featureSize cards (of the first length cards of the deck).
+     */
+    private boolean forEachSetScalar(int[] deck, int length, SetVisitor visitor) {
+        int n = length;
         int r = config.featureSize;
         int[] combination = new int[r];
+        int[] cards = new int[r];
 
         for (int i = 0; i < r; ++i)
             combination[i] = i;
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
-            }
+        while (combination[r - 1] < n) {
+            for (int i = 0; i < r; ++i)
+                cards[i] = deck[combination[i]];
+            Arrays.sort(cards);
+            if (testSet(cards) && !visitor.visit(cards)) return false;
 
             // generate next combination in lexicographic order
             int t = r - 1;
@@ -87,7 +270,223 @@ public class UtilImpl implements Util {
             combination[t]++;
             for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
         }
-        return sets;
+        return true;
+    }
+
+    /**
+     * A bit-sliced representation of a deck: for every feature and value, a bit-plane (a bitset over the positions in
+     * the deck) of the cards having that value. For every combination of featureSize - 1 cards, the value of each
+     * feature that completes them is computed, and the planes of these values are ANDed, which tests all the candidates
+     * for the last card of the set (64 per word) at once.
+     * The planes are read only once built, so the combination space can be searched by several threads.
+     */
+    private class SlicedDeck {
+
+        private final int[] deck;
+        private final int n;
+        private final int r;
+        private final int words;
+        private final int[][] features;
+        private final long[][][] planes;
+
+        /**
+         * @param deck   - an array of card ids.
+         * @param length - the number of cards (from the start of the array) in the deck.
+         */
+        private SlicedDeck(int[] deck, int length) {
+            this.deck = deck;
+            n = length;
+            r = config.featureSize - 1;
+            words = (n + 63) >>> 6;
+            features = new int[n][config.featureCount];
+            planes = new long[config.featureCount][config.featureSize][words];
+            for (int i = 0; i < n; ++i) {
+                cardToFeatures(deck[i], features[i]);
+                for (int f = 0; f < config.featureCount; ++f)
+                    planes[f][features[i][f]][i >>> 6] |= 1L << i;
+            }
+        }
+
+        /**
+         * Enumerates the sets whose first card (by position in the deck) is in the given range, in lexicographic order.
+         * @param from    - the first leading position (inclusive).
+         * @param to      - the last leading position (exclusive).
+         * @param visitor - the callback called for every set, until it returns false.
+         * @param cards   - a buffer of featureSize cards passed to the visitor.
+         * @return        - false iff the visitor stopped the enumeration.
+         */
+        private boolean forEach(int from, int to, SetVisitor visitor, int[] cards) {
+            int[] combination = new int[r];
+            int[] values = new int[config.featureCount];
+            for (int i = 0; i < r; ++i)
+                combination[i] = from + i;
+
+            while (combination[0] < to && combination[r - 1] < n - 1) {
+                if (completeFeatures(features, combination, values)) {
+
+                    // the candidates for the last card are the cards after the combination having all the values
+                    int last = combination[r - 1] + 1;
+                    for (int word = last >>> 6; word < words; ++word) {
+                        long candidates = candidates(values, word, last);
+                        while (candidates != 0) {
+                            int j = (word << 6) + Long.numberOfTrailingZeros(candidates);
+                            candidates &= candidates - 1;
+                            for (int i = 0; i < r; ++i)
+                                cards[i] = deck[combination[i]];
+                            cards[r] = deck[j];
+                            Arrays.sort(cards);
+                            if (!visitor.visit(cards)) return false;
+                        }
+                    }
+                }
+                next(combination);
+            }
+            return true;
+        }
+
+        /**
+         * Counts the sets whose first card is in the given range (counting the candidates without enumerating them).
+         * @param from - the first leading position (inclusive).
+         * @param to   - the last leading position (exclusive).
+         * @return     - the number of sets.
+         */
+        private long count(int from, int to) {
+            long count = 0;
+            int[] combination = new int[r];
+            int[] values = new int[config.featureCount];
+            for (int i = 0; i < r; ++i)
+                combination[i] = from + i;
+
+            while (combination[0] < to && combination[r - 1] < n - 1) {
+                if (completeFeatures(features, combination, values)) {
+                    int last = combination[r - 1] + 1;
+                    for (int word = last >>> 6; word < words; ++word)
+                        count += Long.bitCount(candidates(values, word, last));
+                }
+                next(combination);
+            }
+            return count;
+        }
+
+        /**
+         * @return - the positions in the given word, from position last on, of the cards having all the values.
+         */
+        private long candidates(int[] values, int word, int last) {
+            long candidates = word == last >>> 6 ? -1L << last : -1L;
+            for (int f = 0; f < config.featureCount && candidates != 0; ++f)
+                candidates &= planes[f][values[f]][word];
+            return candidates;
+        }
+
+        /**
+         * Generates the next combination in lexicographic order (leaving room for the last card).
+         */
+        private void next(int[] combination) {
+            int t = r - 1;
+            while (t != 0 && combination[t] == n - 1 - r + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+        }
+
+        /**
+         * Finds the sets whose first card is in the given range, one leading position at a time.
+         * @param count - the number of sets to find (over all the searches sharing found).
+         * @param found - the number of sets found so far, the search stops once it reaches count.
+         */
+        private List<int[]> collect(int from, int to, int count, AtomicInteger found) {
+            List<int[]> sets = new ArrayList<>();
+            SetVisitor visitor = set -> {
+                sets.add(set.clone());
+                return found.incrementAndGet() < count;
+            };
+            int[] cards = new int[config.featureSize];
+            for (int lead = from; lead < to && found.get() < count; ++lead)
+                if (!forEach(lead, lead + 1, visitor, cards)) break;
+            return sets;
+        }
+    }
+
+    /**
+     * Searches a range of leading positions of a sliced deck, splitting it in halves across the fork/join pool.
+     * The results of the halves are merged in order. Once count sets are found (by any task) all the tasks stop, so
+     * with a limited count the sets are not necessarily the lexicographically first ones.
+     */
+    @SuppressWarnings("serial") // the tasks are never serialized
+    private class SearchTask extends RecursiveTask<List<int[]>> {
+
+        private final SlicedDeck sliced;
+        private final int from;
+        private final int to;
+        private final int count;
+        private final AtomicInteger found;
+
+        private SearchTask(SlicedDeck sliced, int from, int to, int count, AtomicInteger found) {
+            this.sliced = sliced;
+            this.from = from;
+            this.to = to;
+            this.count = count;
+            this.found = found;
+        }
+
+        @Override
+        protected List<int[]> compute() {
+            if (to - from <= LEADING_SPLIT || found.get() >= count) return sliced.collect(from, to, count, found);
+            int middle = (from + to) >>> 1;
+            SearchTask right = new SearchTask(sliced, middle, to, count, found);
+            right.fork();
+            List<int[]> sets = new SearchTask(sliced, from, middle, count, found).compute();
+            sets.addAll(right.join());
+            return sets.size() > count ? new ArrayList<>(sets.subList(0, count)) : sets;
+        }
+    }
+
+    /**
+     * Counts the sets of a range of leading positions of a sliced deck, splitting it in halves across the fork/join pool.
+     */
+    @SuppressWarnings("serial") // the tasks are never serialized
+    private class CountTask extends RecursiveTask<Long> {
+
+        private final SlicedDeck sliced;
+        private final int from;
+        private final int to;
+
+        private CountTask(SlicedDeck sliced, int from, int to) {
+            this.sliced = sliced;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= LEADING_SPLIT) return sliced.count(from, to);
+            int middle = (from + to) >>> 1;
+            CountTask right = new CountTask(sliced, middle, to);
+            right.fork();
+            long count = new CountTask(sliced, from, middle).compute();
+            return count + right.join();
+        }
+    }
+
+    /**
+     * Computes the feature values of the card that completes the given cards to a legal set.
+     * @return - true iff there is such a card.
+     */
+    private boolean completeFeatures(int[][] features, int[] combination, int[] values) {
+        for (int f = 0; f < config.featureCount; ++f) {
+            int first = features[combination[0]][f];
+            boolean sameSame = true;
+            int seen = 0, sum = 0;
+            for (int i : combination) {
+                int value = features[i][f];
+                if (value != first) sameSame = false;
+                seen |= 1 << value;
+                sum += value;
+            }
+            if (sameSame) values[f] = first;
+            else if (Integer.bitCount(seen) != combination.length) return false;
+            else values[f] = config.featureSize * (config.featureSize - 1) / 2 - sum;
+        }
+        return true;
     }
 
     public void spin() {
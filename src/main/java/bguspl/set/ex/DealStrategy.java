@@ -0,0 +1,134 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class chooses the cards the dealer deals, so that the table holds at least one legal set whenever the
+ * remaining cards allow it (instead of dealing blindly and waiting for a timeout or a reshuffle).
+ *
+ * The cards are drawn from the top of the shuffled deck, and only if the table would hold no set, some of the drawn
+ * cards are swapped with deck cards that complete a set. The deck cards are found by computing the completing card
+ * of cards that stay on the table, and looking it up in a membership index of the deck.
+ */
+public class DealStrategy {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The position of each card in the dealer's deck (-1 if it is not in the deck), rebuilt on every deal.
+     */
+    private final int[] deckPosition;
+
+    public DealStrategy(Env env) {
+        this.env = env;
+        this.deckPosition = new int[env.config.deckSize];
+    }
+
+    /**
+     * Draws cards from the dealer's deck.
+     * @param tableCards  - the cards that stay on the table.
+     * @param dealersDeck - the dealer's (shuffled) deck, the drawn cards are removed from it.
+     * @param count       - the number of cards to draw.
+     * @return            - the drawn cards (-1 for each card missing when the dealer's deck runs out).
+     */
+    public int[] draw(List<Integer> tableCards, List<Integer> dealersDeck, int count) {
+        int[] drawn = Table.emptyCards(count);
+        int available = Math.min(count, dealersDeck.size());
+        for (int i = 0; i < available; i++)
+            drawn[i] = dealersDeck.remove(0);
+        if (available == 0 || !env.config.guaranteeSets) return drawn;
+
+        List<Integer> table = new ArrayList<Integer>(tableCards);
+        for (int i = 0; i < available; i++)
+            table.add(drawn[i]);
+        if (env.util.anySet(table)) return drawn;
+
+        Arrays.fill(deckPosition, -1);
+        for (int i = 0; i < dealersDeck.size(); i++)
+            deckPosition[dealersDeck.get(i)] = i;
+
+        int[] set = completeFromDeck(tableCards, dealersDeck, available);
+        if (set == null && available >= env.config.featureSize) {
+            // no set can use the cards on the table, look for a set among all the remaining cards
+            List<Integer> remaining = new ArrayList<Integer>(dealersDeck);
+            for (int i = 0; i < available; i++)
+                remaining.add(drawn[i]);
+            List<int[]> sets = env.util.findSets(remaining, 1);
+            if (!sets.isEmpty()) set = sets.get(0);
+        }
+        if (set != null) swapIn(set, drawn, available, dealersDeck);
+        return drawn;
+    }
+
+    /**
+     * Looks for a set made of featureSize - 1 cards that stay on the table and a deck card, or of featureSize - 2
+     * cards that stay on the table and two deck cards.
+     * @return - the set, or null if there is none (or not enough cards are drawn to use it).
+     */
+    private int[] completeFromDeck(List<Integer> tableCards, List<Integer> dealersDeck, int available) {
+        int size = env.config.featureSize;
+        int[] cards = new int[size - 1];
+        for (int fromDeck = 1; fromDeck <= Math.min(2, available) && fromDeck < size; fromDeck++) {
+            int fromTable = size - 1 - (fromDeck - 1); // cards given to completeSet that stay on the table
+            int[] combination = new int[fromTable];
+            for (int i = 0; i < fromTable; i++)
+                combination[i] = i;
+            while (fromTable <= tableCards.size() && (fromTable == 0 || combination[fromTable - 1] < tableCards.size())) {
+                for (int i = 0; i < fromTable; i++)
+                    cards[i] = tableCards.get(combination[i]);
+                if (fromDeck == 1) {
+                    int card = env.util.completeSet(cards);
+                    if (card >= 0 && deckPosition[card] >= 0) return withCard(cards, card);
+                } else for (int card : dealersDeck) {
+                    cards[size - 2] = card;
+                    int completing = env.util.completeSet(cards);
+                    if (completing >= 0 && completing != card && deckPosition[completing] >= 0)
+                        return withCard(cards, completing);
+                }
+                if (fromTable == 0) break;
+
+                // generate next combination in lexicographic order
+                int t = fromTable - 1;
+                while (t != 0 && combination[t] == tableCards.size() - fromTable + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < fromTable; i++) combination[i] = combination[i - 1] + 1;
+            }
+        }
+        return null;
+    }
+
+    private static int[] withCard(int[] cards, int card) {
+        int[] set = Arrays.copyOf(cards, cards.length + 1);
+        set[cards.length] = card;
+        return set;
+    }
+
+    /**
+     * Swaps the deck cards of the set with drawn cards that are not part of the set (from the last drawn card).
+     */
+    private void swapIn(int[] set, int[] drawn, int available, List<Integer> dealersDeck) {
+        int next = available - 1;
+        for (int card : set) {
+            int position = deckPosition[card];
+            if (position < 0) continue; // on the table or already drawn
+            while (contains(set, drawn[next])) next--;
+            dealersDeck.set(position, drawn[next]);
+            deckPosition[drawn[next]] = position;
+            deckPosition[card] = -1;
+            drawn[next--] = card;
+        }
+    }
+
+    private static boolean contains(int[] cards, int card) {
+        for (int c : cards)
+            if (c == card) return true;
+        return false;
+    }
+}
@@ -1,9 +1,22 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.FlightEvents;
+import bguspl.set.SessionPool;
+import bguspl.set.ShutdownCoordinator;
 import bguspl.set.ex.Player.State;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -50,21 +63,101 @@ public class Dealer implements Runnable {
     private long reshuffleTime;
 
     private Queue<Integer> waitingPlayers;
+
+    /**
+     * Computes the hints of the table in the background.
+     */
+    private final HintService hintService;
+
+    /**
+     * Chooses the dealt cards so that the table holds a set whenever possible.
+     */
+    private final DealStrategy dealStrategy;
+
+    /**
+     * Aggregates the statistics of the game.
+     */
+    private final GameAnalytics analytics;
+
+    /**
+     * The slots of sets claimed by players in optimistic commit mode, waiting to be replaced: a ring of copies of the
+     * claimed slots (guarded by this). A slot is claimed again only after the dealer replaced its card, so there are
+     * never more claims than slots.
+     */
+    private final int[][] claimedSlots;
+    private int claimedHead;
+    private int claimedCount;
+
+    /**
+     * The slots of the claimed set the dealer replaces (reused by every replacement).
+     */
+    private final int[] polledSlots;
+
+    /**
+     * The number of legal sets whose point was not added to the player's score yet (the set is removed from the table
+     * before the player thread increases its score).
+     */
+    private final AtomicInteger pendingPoints = new AtomicInteger();
+
+    /**
+     * The cards of the set the dealer checks (reused by every check).
+     */
+    private final int[] claimedSet;
+
+    /**
+     * The checkpoint file (null if checkpoints are disabled), the thread writing the checkpoints, and the time of the
+     * next checkpoint.
+     */
+    private final Path checkpointFile;
+    private final ExecutorService checkpointWriter;
+    private long nextCheckpoint;
+
+    /**
+     * Stops the players threads (and their AI threads) together when the game ends (a new one for every game).
+     */
+    private ShutdownCoordinator shutdown;
+
+    /**
+     * The threads the players (and their AI) run on, shared by the games of the session (null to start new threads).
+     */
+    private final SessionPool pool;
+
     private final long SLEEP_TIME=10;
     private long startTime = System.currentTimeMillis(); //just for config.turnTimeoutMillis = 0 mode
 
 
     public Dealer(Env env, Table table, Player[] players) {
+        this(env, table, players, null);
+    }
+
+    /**
+     * @param pool - the threads to run the players on, shared by the games of the session.
+     */
+    public Dealer(Env env, Table table, Player[] players, SessionPool pool) {
         this.env = env;
         this.table = table;
         this.players = players;
+        this.pool = pool;
         deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
         dealersDeck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
 
         //TODO
         reshuffleTime = System.currentTimeMillis()+env.config.turnTimeoutMillis;
         waitingPlayers = new LinkedList<Integer>();
-
+        analytics = new GameAnalytics(env);
+        hintService = new HintService(env, analytics);
+        dealStrategy = new DealStrategy(env);
+        claimedSet = new int[env.config.featureSize];
+        claimedSlots = new int[env.config.tableSize][env.config.featureSize];
+        polledSlots = new int[env.config.featureSize];
+        shutdown = new ShutdownCoordinator(env.logger);
+
+        checkpointFile = env.config.checkpointFile.isEmpty() ? null : Paths.get(env.config.checkpointFile);
+        checkpointWriter = checkpointFile == null ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -74,11 +167,17 @@ public class Dealer implements Runnable {
     public void run() {
       
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
+        //resume the saved game (if any)
+        boolean resumed = resumeCheckpoint();
+
         //start players threads
-        for(Player player: this.players){
-            player.getPlayerThread().start();
-        }
+        for(Player player: this.players)
+            startThread(player, "Player "+player.id, player::terminate);
 
+        if(resumed && !shouldFinish()){
+            updateTimerDisplay(false);
+            timerLoop();
+        }
         while (!shouldFinish()) {
             replaceAllTable();
             updateTimerDisplay(true);
@@ -87,54 +186,229 @@ public class Dealer implements Runnable {
 
         if(env.config.turnTimeoutMillis>0)
             env.ui.setCountdown(0, false);
+        if(env.config.turnTimeoutMillis==0)
+            env.ui.setElapsed(System.currentTimeMillis()-startTime);
+        finishCheckpoints();
         clearTable();
         announceWinners();
 
-        //terminate players threads
+        //terminate players threads (all at once, waiting for them up to the shutdown timeout)
         try{
-            for(int i = players.length-1; i>=0; i--){
-                players[i].terminate();
-                players[i].getPlayerThread().interrupt();
-                players[i].getPlayerThread().join();
-            }
+            shutdown.shutdown(env.config.shutdownTimeoutMillis);
         }
         catch(InterruptedException ex){}
+        analytics.flush(players, terminate);
 
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
+    /**
+     * Resets the game in place for the next game of the session (after the dealer thread of the previous game ended):
+     * the decks, the queues, the timers, the statistics and the players. The table is already empty, and the
+     * threads and the background services are kept.
+     */
+    public void newGame(){
+        deck.clear();
+        dealersDeck.clear();
+        for(int card=0; card<env.config.deckSize; card++){
+            deck.add(card);
+            dealersDeck.add(card);
+        }
+        synchronized(this){
+            waitingPlayers.clear();
+            claimedHead = 0;
+            claimedCount = 0;
+        }
+        pendingPoints.set(0);
+        analytics.reset();
+        shutdown = new ShutdownCoordinator(env.logger);
+        terminate = false;
+
+        startTime = System.currentTimeMillis();
+        reshuffleTime = startTime+env.config.turnTimeoutMillis;
+        nextCheckpoint = 0;
+        for(Player player: players)
+            player.newGame();
+    }
+
+    /**
+     * Stops the background services (hints and checkpoints), at the end of the session.
+     */
+    public void close(){
+        hintService.shutdown();
+        if(checkpointWriter != null)
+            checkpointWriter.shutdown();
+    }
+
+    /**
+     * Starts a thread of the game (on the session pool, if there is one), stopped together with the players when the
+     * game ends.
+     * @param target - the code of the thread.
+     * @param name   - the name of the thread.
+     * @param signal - sets the stop flag the thread polls.
+     */
+    void startThread(Runnable target, String name, Runnable signal){
+        if(pool != null){
+            shutdown.register(pool.start(target, name), signal);
+        }
+        else{
+            Thread thread = new Thread(target, name);
+            shutdown.register(thread, signal);
+            thread.start();
+        }
+    }
+
     /**
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
         long mode = env.config.turnTimeoutMillis;
-        while (!terminate && ((mode >0 && System.currentTimeMillis() < reshuffleTime)||(mode<=0 && env.util.findSets(table.cardsOnTable(), 1).size()>0))) {
+        while (!terminate && ((mode >0 && System.currentTimeMillis() < reshuffleTime)||(mode<=0 && table.snapshot().anySet(env.util)))) {
             sleepUntilWokenOrTimeout();
             checkSetQueue();      
-            updateTimerDisplay(false);
+            if(checkpointFile != null && System.currentTimeMillis() >= nextCheckpoint)
+                checkpoint();
+        }
+    }
+
+    /**
+     * Takes a consistent copy of the game state (holding the table lock only while copying) and writes it to the
+     * checkpoint file in the background.
+     */
+    private void checkpoint(){
+        GameCheckpoint checkpoint = null;
+        table.tableLock.writeLock().lock();
+        try{
+            //a claim or a point in progress is not consistent with the table (the previous checkpoint is kept)
+            if(!hasClaimedSlots() && !hasWaitingPlayers() && pendingPoints.get() == 0){
+                TableSnapshot snapshot = table.snapshot();
+                int[] cards = new int[snapshot.size()];
+                for(int slot=0; slot<cards.length; slot++)
+                    cards[slot] = snapshot.card(slot);
+                int[] scores = new int[players.length];
+                int[][] playerSlots = new int[players.length][];
+                for(int i=0; i<players.length; i++){
+                    scores[i] = players[i].getScore();
+                    playerSlots[i] = table.playerSlots(i);
+                }
+                long now = System.currentTimeMillis();
+                long timer = env.config.turnTimeoutMillis > 0 ? reshuffleTime-now : now-startTime;
+                checkpoint = new GameCheckpoint(cards, GameCheckpoint.toArray(deck), GameCheckpoint.toArray(dealersDeck), scores, playerSlots, timer);
+            }
+        }
+        finally{
+            table.tableLock.writeLock().unlock();
+        }
+        if(checkpoint == null)
+            return;
+        nextCheckpoint = System.currentTimeMillis()+env.config.checkpointIntervalMillis;
+        GameCheckpoint saved = checkpoint;
+        checkpointWriter.execute(() -> {
+            try{
+                saved.write(env.config, checkpointFile);
+            }
+            catch(IOException ex){
+                env.logger.severe("cannot write checkpoint " + checkpointFile + ": " + ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Resumes the game from the checkpoint file (if there is one), before the players start.
+     * @return - true iff the game was resumed.
+     */
+    private boolean resumeCheckpoint(){
+        if(checkpointFile == null || !Files.exists(checkpointFile))
+            return false;
+        GameCheckpoint checkpoint;
+        try{
+            checkpoint = GameCheckpoint.read(env.config, checkpointFile);
+        }
+        catch(IOException ex){
+            env.logger.severe("cannot resume from checkpoint " + checkpointFile + ": " + ex.getMessage());
+            return false;
+        }
+
+        deck.clear();
+        for(int card : checkpoint.deck)
+            deck.add(card);
+        dealersDeck.clear();
+        for(int card : checkpoint.dealersDeck)
+            dealersDeck.add(card);
+        for(int i=0; i<players.length; i++)
+            players[i].restoreScore(checkpoint.scores[i]);
+
+        table.tableLock.writeLock().lock();
+        table.restore(checkpoint.slotToCard, checkpoint.playerSlots);
+        TableSnapshot snapshot = table.snapshot();
+        table.tableLock.writeLock().unlock();
+        hintService.publish(snapshot);
+        analytics.resumed();
+
+        long now = System.currentTimeMillis();
+        reshuffleTime = now+checkpoint.timer;
+        startTime = now-checkpoint.timer;
+        nextCheckpoint = now+env.config.checkpointIntervalMillis;
+        env.logger.log(Level.INFO, "resumed the game from checkpoint " + checkpointFile);
+        return true;
+    }
+
+    /**
+     * Saves the game if it was terminated by an external event, or deletes the checkpoint if the game is over, and
+     * waits for the pending checkpoint writes.
+     */
+    private void finishCheckpoints(){
+        if(checkpointFile == null)
+            return;
+        if(terminate)
+            checkpoint();
+        try{
+            //the writer is kept for the next game: wait for the writes before this no-op (it runs them in order)
+            try{
+                checkpointWriter.submit(() -> {}).get(env.config.checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+            catch(ExecutionException | TimeoutException ex){}
+            if(!terminate)
+                Files.deleteIfExists(checkpointFile);
         }
+        catch(InterruptedException | IOException ex){}
     }
 
     private void checkSetQueue(){
+        while(pollClaimedSlots(polledSlots)){
+            replaceSetTable(claimedCards(polledSlots));
+            updateTimerDisplay(true);
+        }
+
         if(!waitingPlayers.isEmpty())
             {
                 Integer playerId;
                 synchronized(this){playerId = waitingPlayers.poll();}
+                FlightEvents.Verdict event = new FlightEvents.Verdict();
+                event.begin();
 
                 //create the set of cards the player had chosen              
                 synchronized(players[playerId]){
-                    int[] set = table.playerTokens(playerId);
-                    if(set.length==env.config.featureSize){
-                        if(env.util.testSet(set)){
+                    if(table.playerTokens(playerId, claimedSet)==env.config.featureSize){
+                        if(env.util.testSet(claimedSet)){
+                            pendingPoints.incrementAndGet();
+                            analytics.setFound(playerId);
                             players[playerId].state = State.Point;
-                            replaceSetTable(set);
+                            replaceSetTable(claimedSet);
                             updateTimerDisplay(true);
                         }
-                        else
+                        else{
+                            analytics.penalty(playerId);
                             players[playerId].state = State.Penalty;
+                        }
                     }
                     players[playerId].notify();
                 }
+                if(event.shouldCommit()){
+                    event.player = playerId;
+                    event.legal = players[playerId].state == State.Point;
+                    event.commit();
+                }
             }
     }
 
@@ -152,40 +426,33 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || !env.util.anySet(deck);
     }
 
     /**
-     * Checks cards should be removed from the table and removes them.
+     * Removes cards that were collected as a set from the game.
      * @param cards - cards to remove
-     * @return - return slots that were now cleared
      */
-    private int[] removeCardsFromTable(int[] cards) {
-        // TODO implement
+    private void removeFromDeck(int[] cards) {
         for(Integer card: cards)
             deck.remove(card);
-        return table.removeCards(cards);  
     }
 
     /**
-     * Check if any cards can be removed from the deck and placed on the table.
-     * @param- the empty slots to fill with new cards
+     * Draws cards from the dealer's deck to place on the table.
+     * @param tableCards - the cards that stay on the table.
+     * @param count - the number of cards to draw.
+     * @return - the drawn cards (-1 for each card missing when the dealer's deck runs out)
      */
-    private void placeCardsOnTable(int[] slots) {
-        // TODO implement
-        int numOfCardsInDeck = dealersDeck.size();
-        for(int i=0; i < slots.length && i<numOfCardsInDeck; i++){
-            int card = dealersDeck.remove(0);
-            table.placeCard(card, slots[i]); //place the card on the table
-        }  
-    }
-
-    public void placeCardsOnTable(){
-        int numOfCardsInDeck = dealersDeck.size();
-        for(int i=0; i < env.config.tableSize && i<numOfCardsInDeck; i++){
-            int card = dealersDeck.remove(0);
-            table.placeCard(card, i); //place the card on the table
-        }
+    private int[] drawCards(List<Integer> tableCards, int count) {
+        return dealStrategy.draw(tableCards, dealersDeck, count);
+    }
+
+    /**
+     * @return - all the slots of the table.
+     */
+    private int[] allSlots() {
+        return IntStream.range(0, env.config.tableSize).toArray();
     }
 
     /**
@@ -200,23 +467,21 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Reset and/or publish the countdown to the display. The display renders the countdown by itself from the
+     * deadline, so it is only published when it changes (or when the game is resumed).
      */
     private void updateTimerDisplay(boolean reset) {
         // TODO implement
         long currentSystemTime = System.currentTimeMillis();
         if(env.config.turnTimeoutMillis>0){
-            if(reset){
+            if(reset)
                 reshuffleTime = currentSystemTime+env.config.turnTimeoutMillis;
-                env.ui.setCountdown(env.config.turnTimeoutMillis,false);
-            }
-            else
-                env.ui.setCountdown(Math.max(reshuffleTime-currentSystemTime, 0),reshuffleTime-currentSystemTime<=env.config.turnTimeoutWarningMillis);
+            env.ui.setTimer(reshuffleTime, env.config.turnTimeoutWarningMillis, true);
         }
         if(env.config.turnTimeoutMillis==0){
             if(reset)
-                this.startTime = System.currentTimeMillis();
-            env.ui.setElapsed(System.currentTimeMillis()-this.startTime);
+                this.startTime = currentSystemTime;
+            env.ui.setTimer(startTime, 0, false);
         }
     }
 
@@ -248,6 +513,36 @@ public class Dealer implements Runnable {
                 winnersArray.add(player.id);
         int[] winners = winnersArray.stream().mapToInt(Integer::intValue).toArray();
         env.ui.announceWinner(winners);     
+        if(!terminate && !env.config.leaderboardFile.isEmpty()) //a terminated game is not over
+            recordLeaderboard(winningPoint);
+    }
+
+    /**
+     * Adds the results of the game to the leaderboard.
+     * @param winningPoint - the score of the winners.
+     */
+    private void recordLeaderboard(int winningPoint) {
+        String[] names = new String[players.length];
+        int[] scores = new int[players.length];
+        boolean[] winners = new boolean[players.length];
+        for(int i=0; i<players.length; i++){
+            names[i] = env.config.playerNames[players[i].id];
+            scores[i] = players[i].getScore();
+            winners[i] = scores[i] == winningPoint;
+        }
+        Path file = Paths.get(env.config.leaderboardFile);
+        try{
+            Leaderboard leaderboard = Leaderboard.open(file, env.config.leaderboardCapacity);
+            try{
+                leaderboard.record(names, scores, winners);
+            }
+            finally{
+                leaderboard.close();
+            }
+        }
+        catch(IOException | RuntimeException ex){
+            env.logger.severe("cannot update the leaderboard " + file + ": " + ex.getMessage());
+        }
     }
 
     /**
@@ -257,6 +552,61 @@ public class Dealer implements Runnable {
     public synchronized void acceptPlayerSet(Integer playerId){
         //TODO
         this.waitingPlayers.add(playerId);
+        FlightEvents.Claim event = new FlightEvents.Claim();
+        if(event.isEnabled()){
+            event.player = playerId;
+            event.queueLength = waitingPlayers.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Called by a player that claimed a set in optimistic commit mode (while it still holds the table's read lock).
+     * @param slots - the claimed slots, to be replaced with new cards (copied, the player reuses the array).
+     */
+    public synchronized void acceptClaimedSlots(int[] slots){
+        pendingPoints.incrementAndGet();
+        System.arraycopy(slots, 0, claimedSlots[(claimedHead+claimedCount) % claimedSlots.length], 0, slots.length);
+        claimedCount++;
+    }
+
+    /**
+     * Called by a player after its score was increased for a legal set.
+     */
+    public void pointScored(){
+        pendingPoints.decrementAndGet();
+    }
+
+    /**
+     * @param slots - filled with the slots of the oldest claimed set.
+     * @return      - false iff no set is claimed.
+     */
+    private synchronized boolean pollClaimedSlots(int[] slots){
+        if(claimedCount == 0)
+            return false;
+        System.arraycopy(claimedSlots[claimedHead], 0, slots, 0, slots.length);
+        claimedHead = (claimedHead+1) % claimedSlots.length;
+        claimedCount--;
+        return true;
+    }
+
+    private synchronized boolean hasClaimedSlots(){
+        return claimedCount > 0;
+    }
+
+    private synchronized boolean hasWaitingPlayers(){
+        return !this.waitingPlayers.isEmpty();
+    }
+
+    /**
+     * @param slots - claimed slots (their cards can only be changed by the dealer).
+     * @return      - the cards in the slots.
+     */
+    private int[] claimedCards(int[] slots){
+        int[] cards = new int[slots.length];
+        for(int i=0; i<slots.length; i++)
+            cards[i] = table.slotToCard[slots[i]];
+        return cards;
     }
 
     public void clearPlayersQueues(){
@@ -271,68 +621,118 @@ public class Dealer implements Runnable {
      */
     public void replaceSetTable(int[] set){
 
-        //acquire lock
+        //prepare the replacement without the lock (the dealer is the only writer of the cards, and the players keep
+        //placing tokens meanwhile)
+        int[] avaibleSlots = table.slotsOf(set);
+        removeFromDeck(set);
+        List<Integer> tableCards = table.cardsOnTable();
+        for(int card: set)
+            tableCards.remove((Integer) card);
+        Table.Replacement replacement = table.prepare(avaibleSlots, drawCards(tableCards, avaibleSlots.length));
+        TableSnapshot snapshot = replacement.snapshot;
+
+        //acquire lock, only to publish the replacement (in one transaction)
         table.tableLock.writeLock().lock();
+        try{
+            table.commit(replacement);
+        }
+        finally{
+            table.tableLock.writeLock().unlock();
+        }
 
-        //remove set from table
-        int[] avaibleSlots = removeCardsFromTable(set);
-
-        //place new cards on table
-        placeCardsOnTable(avaibleSlots);
-
-        //print hints if needed
-        if(env.config.hints)
-            table.hints();
+        //update the ui without the lock (the new cards refuse tokens until they are shown)
+        table.show(replacement);
 
-        //release lock
-        table.tableLock.writeLock().unlock();
+        //compute (and print) hints in the background
+        hintService.publish(snapshot);
+        analytics.dealt(dealersDeck.size(), deck.size(), false);
     }
 
     // clear the table and place new cards
     public void replaceAllTable(){
+        FlightEvents.Reshuffle event = new FlightEvents.Reshuffle();
+        event.begin();
 
-        //acquire lock
+        //acquire lock, only to collect the claimed sets and to hold the table (no more tokens and claims) until the
+        //new cards are shown
+        int[] allSlots = allSlots();
+        List<Integer> claimed = new ArrayList<Integer>();
         table.tableLock.writeLock().lock();
+        try{
+            //sets that were claimed are out of the game
+            while(pollClaimedSlots(polledSlots)){
+                int[] cards = claimedCards(polledSlots);
+                removeFromDeck(cards);
+                for(int card : cards)
+                    claimed.add(card);
+            }
+            table.hold(allSlots);
+        }
+        finally{
+            table.tableLock.writeLock().unlock();
+        }
 
-        //remove cards from the table back to dealer's deck and shuffle
-        removeAllCardsFromTable();
+        //return the other cards on the table to the dealer's deck, shuffle and prepare the new cards without the lock
+        TableSnapshot previous = table.snapshot();
+        for(int slot=0; slot<previous.size(); slot++)
+            if(previous.card(slot) >= 0 && !claimed.contains(previous.card(slot)))
+                dealersDeck.add(previous.card(slot));
         Collections.shuffle(dealersDeck); 
+        Table.Replacement replacement = table.prepare(allSlots, drawCards(new ArrayList<Integer>(), allSlots.length));
 
-        //place new cards on table
-        placeCardsOnTable();
-
-        //print hints if needed
-        if(env.config.hints)
-            table.hints();
+        //acquire lock, only to replace all the cards on the table and clear the queues (in one transaction)
+        table.tableLock.writeLock().lock();
+        try{
+            table.commit(replacement);
 
-        //clear queues
-        clearPlayersQueues(); //players presses queue
-        waitingPlayers.clear(); //sets queue
-        for(Player player: players){
-            synchronized(player){
-                player.notify();
+            //clear queues
+            clearPlayersQueues(); //players presses queue
+            synchronized(this){
+                waitingPlayers.clear(); //sets queue
+            }
+            for(Player player: players){
+                synchronized(player){
+                    player.notify();
+                }
             }
-        }          
+        }
+        finally{
+            table.tableLock.writeLock().unlock();
+        }
 
-        //release lock
-        table.tableLock.writeLock().unlock();
+        //update the ui without the lock (the new cards refuse tokens until they are shown)
+        table.show(replacement);
+
+        //compute (and print) hints in the background
+        hintService.publish(replacement.snapshot);
+        analytics.dealt(dealersDeck.size(), deck.size(), true);
+
+        if(event.shouldCommit()){
+            event.claimedCards = claimed.size();
+            event.dealersDeck = dealersDeck.size();
+            event.commit();
+        }
     }
 
     public Queue<Integer> getWaitingPlayers(){
         return this.waitingPlayers;
     }
+    public HintService getHintService(){
+        return this.hintService;
+    }
+    public GameAnalytics getAnalytics(){
+        return this.analytics;
+    }
+    public ShutdownCoordinator getShutdown(){
+        return this.shutdown;
+    }
+
     public int getDealerDeckSize (){
         return dealersDeck.size();
     }
 
     public void clearTable(){
-        //acquire lock
-        table.tableLock.writeLock().lock();
-
-        //remove cards from the table
+        //remove cards from the table (the table takes its lock only to commit the change)
         removeAllCardsFromTable();
-
-        //release lock
-        table.tableLock.writeLock().unlock();
     }
 }
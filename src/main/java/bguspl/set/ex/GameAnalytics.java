@@ -0,0 +1,352 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class aggregates the statistics of a game while it runs (time to find a set, points and penalties per player,
+ * sets available per deal, reshuffles and the depletion of the deck), in constant memory: every statistic is a
+ * counter, a fixed histogram or a fixed-size downsampled curve. At the end of the game the aggregates are written to
+ * a summary file, so analysing many games never requires parsing the logs. The sets available per deal are counted
+ * by the hint service (on its thread), not by the dealer.
+ *
+ * File format (big endian): magic, format version, the number of columns, and then every column: its name, its length
+ * and its values (longs). A single value column is a scalar of the game (e.g. "timeToFind.count"), and the other
+ * columns are per player (e.g. "penalties"), histograms (e.g. "setsPerDeal.histogram") or curves.
+ */
+public class GameAnalytics {
+
+    private static final int MAGIC = 0x53455441; // "SETA"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The number of histogram buckets, and the number of points kept in the deck depletion curve.
+     */
+    private static final int BUCKETS = 32;
+    private static final int CURVE_POINTS = 64;
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The directory the summary is written to (null if analytics are disabled).
+     */
+    private final Path directory;
+
+    private long startTime = System.currentTimeMillis();
+
+    /**
+     * The time the table last changed (the time to find a set is measured from it).
+     */
+    private long dealTime = startTime;
+    private long reshuffleTime = -1;
+
+    private boolean resumed;
+    private long deals;
+    /**
+     * The number of times all the cards on the table were replaced, including the first deal (one more than the
+     * reshuffle intervals).
+     */
+    private long reshuffles;
+    private final Statistic timeToFind = new Statistic(true);
+    private final Statistic setsPerDeal = new Statistic(false);
+    private final Statistic reshuffleInterval = new Statistic(true);
+    private final long[] points;
+    private final long[] penalties;
+
+    /**
+     * The deck depletion curve: the elapsed time, the cards left in the dealer's deck and the cards left in the game
+     * at every sampled deal. When the curve is full every other point is dropped and the sampling interval doubles.
+     */
+    private final long[] curveMillis = new long[CURVE_POINTS];
+    private final long[] curveDealersDeck = new long[CURVE_POINTS];
+    private final long[] curveCards = new long[CURVE_POINTS];
+    private int curveLength;
+    private long curveInterval = 1;
+
+    /**
+     * A count, sum, minimum, maximum and histogram of values. The histogram buckets are either the values themselves
+     * (the last bucket holds the larger values), or powers of two (for durations in milliseconds).
+     */
+    private static class Statistic {
+        private final boolean logarithmic;
+        private final long[] histogram = new long[BUCKETS];
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        private Statistic(boolean logarithmic) {
+            this.logarithmic = logarithmic;
+        }
+
+        private void reset() {
+            Arrays.fill(histogram, 0);
+            count = 0;
+            sum = 0;
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+        }
+
+        private void add(long value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            int bucket = logarithmic ? 64 - Long.numberOfLeadingZeros(Math.max(0, value)) : (int) Math.max(0, value);
+            histogram[Math.min(bucket, BUCKETS - 1)]++;
+        }
+
+        private void write(Map<String, long[]> columns, String name) {
+            columns.put(name + ".count", new long[]{count});
+            columns.put(name + ".sum", new long[]{sum});
+            columns.put(name + ".min", new long[]{count == 0 ? 0 : min});
+            columns.put(name + ".max", new long[]{count == 0 ? 0 : max});
+            columns.put(name + ".histogram", histogram.clone());
+        }
+    }
+
+    public GameAnalytics(Env env) {
+        this.env = env;
+        this.directory = env.config.analyticsDirectory.isEmpty() ? null : Paths.get(env.config.analyticsDirectory);
+        points = new long[env.config.players];
+        penalties = new long[env.config.players];
+    }
+
+    /**
+     * @return - true iff the statistics are collected (when an analytics directory is configured).
+     */
+    public boolean enabled() {
+        return directory != null;
+    }
+
+    /**
+     * Clears the statistics for a new game of the session.
+     */
+    public synchronized void reset() {
+        startTime = System.currentTimeMillis();
+        dealTime = startTime;
+        reshuffleTime = -1;
+        resumed = false;
+        deals = 0;
+        reshuffles = 0;
+        timeToFind.reset();
+        setsPerDeal.reset();
+        reshuffleInterval.reset();
+        Arrays.fill(points, 0);
+        Arrays.fill(penalties, 0);
+        curveLength = 0;
+        curveInterval = 1;
+    }
+
+    /**
+     * Called by the dealer when the game is resumed from a checkpoint.
+     */
+    public synchronized void resumed() {
+        resumed = true;
+    }
+
+    /**
+     * Called by the dealer after it changed the cards on the table.
+     * @param dealersDeck - the number of cards left in the dealer's deck.
+     * @param cards       - the number of cards left in the game.
+     * @param reshuffle   - true iff all the cards on the table were replaced.
+     */
+    public void dealt(int dealersDeck, int cards, boolean reshuffle) {
+        if (directory == null) return;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            dealTime = now;
+            if (reshuffle) {
+                reshuffles++;
+                if (reshuffleTime >= 0) reshuffleInterval.add(now - reshuffleTime);
+                reshuffleTime = now;
+            }
+            if (deals++ % curveInterval == 0) {
+                if (curveLength == CURVE_POINTS) downsampleCurve();
+                curveMillis[curveLength] = now - startTime;
+                curveDealersDeck[curveLength] = dealersDeck;
+                curveCards[curveLength] = cards;
+                curveLength++;
+            }
+        }
+    }
+
+    /**
+     * Called by the hint service after it counted the sets of a dealt table (a table replaced before it was counted
+     * is not sampled).
+     * @param sets - the number of legal sets on the table.
+     */
+    public void setsDealt(long sets) {
+        if (directory == null) return;
+        synchronized (this) {
+            setsPerDeal.add(sets);
+        }
+    }
+
+    private void downsampleCurve() {
+        for (int i = 0; i < CURVE_POINTS / 2; i++) {
+            curveMillis[i] = curveMillis[2 * i];
+            curveDealersDeck[i] = curveDealersDeck[2 * i];
+            curveCards[i] = curveCards[2 * i];
+        }
+        curveLength = CURVE_POINTS / 2;
+        curveInterval *= 2;
+    }
+
+    /**
+     * Called when a player's set is found legal (before its cards are replaced).
+     * @param player - the player's id.
+     */
+    public void setFound(int player) {
+        if (directory == null) return;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            timeToFind.add(now - dealTime);
+            points[player]++;
+        }
+    }
+
+    /**
+     * Called when a player's set is found illegal.
+     * @param player - the player's id.
+     */
+    public synchronized void penalty(int player) {
+        if (directory == null) return;
+        penalties[player]++;
+    }
+
+    /**
+     * Writes the summary of the game to a new file in the analytics directory.
+     * @param players    - the players (for their final scores).
+     * @param terminated - true iff the game was terminated by an external event.
+     */
+    public void flush(Player[] players, boolean terminated) {
+        if (directory == null) return;
+        Map<String, long[]> columns = new LinkedHashMap<String, long[]>();
+        synchronized (this) {
+            columns.put("startMillis", new long[]{startTime});
+            columns.put("durationMillis", new long[]{System.currentTimeMillis() - startTime});
+            columns.put("featureSize", new long[]{env.config.featureSize});
+            columns.put("featureCount", new long[]{env.config.featureCount});
+            columns.put("tableSize", new long[]{env.config.tableSize});
+            columns.put("players", new long[]{players.length});
+            columns.put("terminated", new long[]{terminated ? 1 : 0});
+            columns.put("resumed", new long[]{resumed ? 1 : 0});
+            columns.put("deals", new long[]{deals});
+            columns.put("reshuffles", new long[]{reshuffles});
+            timeToFind.write(columns, "timeToFind");
+            setsPerDeal.write(columns, "setsPerDeal");
+            reshuffleInterval.write(columns, "reshuffleInterval");
+            long[] scores = new long[players.length];
+            for (int i = 0; i < players.length; i++)
+                scores[i] = players[i].getScore();
+            columns.put("scores", scores);
+            columns.put("points", points.clone());
+            columns.put("penalties", penalties.clone());
+            columns.put("depletion.millis", Arrays.copyOf(curveMillis, curveLength));
+            columns.put("depletion.dealersDeck", Arrays.copyOf(curveDealersDeck, curveLength));
+            columns.put("depletion.cards", Arrays.copyOf(curveCards, curveLength));
+        }
+        try {
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, "game-" + columns.get("startMillis")[0] + "-", ".stats");
+            write(columns, file);
+            env.logger.info("wrote the game analytics to " + file);
+        } catch (IOException e) {
+            env.logger.severe("cannot write the game analytics to " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private static void write(Map<String, long[]> columns, Path file) throws IOException {
+        try (OutputStream os = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeInt(columns.size());
+            for (Map.Entry<String, long[]> column : columns.entrySet()) {
+                out.writeUTF(column.getKey());
+                out.writeInt(column.getValue().length);
+                for (long value : column.getValue())
+                    out.writeLong(value);
+            }
+        }
+    }
+
+    /**
+     * Reads a summary file.
+     * @param file - the summary file.
+     * @return     - the columns of the summary, by name (in file order).
+     */
+    public static Map<String, long[]> read(Path file) throws IOException {
+        try (InputStream is = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a game analytics file");
+            int version = in.readShort();
+            if (version != FORMAT_VERSION) throw new IOException("unsupported game analytics format version " + version);
+            Map<String, long[]> columns = new LinkedHashMap<String, long[]>();
+            for (int i = in.readInt(); i > 0; i--) {
+                String name = in.readUTF();
+                long[] values = new long[in.readInt()];
+                for (int j = 0; j < values.length; j++)
+                    values[j] = in.readLong();
+                columns.put(name, values);
+            }
+            return columns;
+        }
+    }
+
+    /**
+     * Prints the scalar columns of summary files as CSV, one line per game, for offline analysis.
+     * Usage: GameAnalytics &lt;summary file or directory&gt;...
+     */
+    public static void main(String[] args) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path))
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.stats")) {
+                    for (Path file : stream)
+                        files.add(file);
+                }
+            else files.add(path);
+        }
+        files.sort(null);
+
+        List<String> header = null;
+        for (Path file : files) {
+            Map<String, long[]> columns = read(file);
+            if (header == null) {
+                header = new ArrayList<String>();
+                for (Map.Entry<String, long[]> column : columns.entrySet())
+                    if (column.getValue().length == 1) header.add(column.getKey());
+                System.out.println("file," + String.join(",", header));
+            }
+            StringBuilder line = new StringBuilder(file.getFileName().toString());
+            for (String name : header) {
+                long[] values = columns.get(name);
+                line.append(',');
+                if (values != null && values.length == 1) line.append(values[0]);
+            }
+            System.out.println(line);
+        }
+    }
+}
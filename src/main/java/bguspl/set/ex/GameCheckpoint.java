@@ -0,0 +1,161 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * An immutable copy of the full game state, that can be written to and read from a compact binary file.
+ *
+ * File format (big endian): magic, format version, featureSize, featureCount, tableSize, players (the game layout),
+ * the card of each slot (-1 if none), the deck, the dealer's deck, the score and token slots of each player, and the
+ * timer (remaining millis in countdown mode, elapsed millis in elapsed mode). The cards are ints (the deck of a large
+ * layout does not fit in a short), and every value read is validated against the game configuration.
+ */
+public class GameCheckpoint {
+
+    private static final int MAGIC = 0x53455443; // "SETC"
+    private static final int FORMAT_VERSION = 2;
+
+    final int[] slotToCard;
+    final int[] deck;
+    final int[] dealersDeck;
+    final int[] scores;
+    final int[][] playerSlots;
+    final long timer;
+
+    GameCheckpoint(int[] slotToCard, int[] deck, int[] dealersDeck, int[] scores, int[][] playerSlots, long timer) {
+        this.slotToCard = slotToCard;
+        this.deck = deck;
+        this.dealersDeck = dealersDeck;
+        this.scores = scores;
+        this.playerSlots = playerSlots;
+        this.timer = timer;
+    }
+
+    static int[] toArray(List<Integer> cards) {
+        int[] array = new int[cards.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = cards.get(i);
+        return array;
+    }
+
+    /**
+     * Writes the checkpoint to a file, atomically replacing the previous one.
+     * @param config - the game configuration.
+     * @param file   - the checkpoint file.
+     */
+    public void write(Config config, Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeShort(config.featureSize);
+            out.writeShort(config.featureCount);
+            out.writeShort(config.tableSize);
+            out.writeShort(config.players);
+            writeCards(out, slotToCard);
+            out.writeInt(deck.length);
+            writeCards(out, deck);
+            out.writeInt(dealersDeck.length);
+            writeCards(out, dealersDeck);
+            for (int player = 0; player < scores.length; player++) {
+                out.writeInt(scores[player]);
+                out.writeShort(playerSlots[player].length);
+                for (int slot : playerSlots[player])
+                    out.writeShort(slot);
+            }
+            out.writeLong(timer);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint from a file.
+     * @param config - the game configuration.
+     * @param file   - the checkpoint file.
+     * @return       - the checkpoint.
+     * @throws IOException - if the file cannot be read, is corrupt, or does not match the game configuration.
+     */
+    public static GameCheckpoint read(Config config, Path file) throws IOException {
+        try (InputStream is = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            if (in.readInt() != MAGIC || in.readShort() != FORMAT_VERSION)
+                throw new IOException("not a checkpoint file (or an unsupported version)");
+            if (in.readShort() != config.featureSize || in.readShort() != config.featureCount
+                    || in.readShort() != config.tableSize || in.readShort() != config.players)
+                throw new IOException("the checkpoint does not match the game configuration");
+            int[] slotToCard = readCards(in, config.tableSize, config.deckSize, true, "table");
+            int[] deck = readCards(in, length(in.readInt(), config.deckSize, "deck"), config.deckSize, false, "deck");
+            int[] dealersDeck = readCards(in, length(in.readInt(), config.deckSize, "dealer's deck"), config.deckSize,
+                    false, "dealer's deck");
+            int[] scores = new int[config.players];
+            int[][] playerSlots = new int[config.players][];
+            for (int player = 0; player < scores.length; player++) {
+                scores[player] = in.readInt();
+                if (scores[player] < 0)
+                    throw new IOException("invalid score of player " + (player + 1) + ": " + scores[player]);
+                playerSlots[player] = readSlots(in, length(in.readUnsignedShort(), config.featureSize, "tokens"),
+                        slotToCard, player);
+            }
+            return new GameCheckpoint(slotToCard, deck, dealersDeck, scores, playerSlots, in.readLong());
+        }
+    }
+
+    /**
+     * @throws IOException - if the length is negative or larger than the maximum.
+     */
+    private static int length(int length, int max, String name) throws IOException {
+        if (length < 0 || length > max)
+            throw new IOException("invalid " + name + " length: " + length + " (at most " + max + ")");
+        return length;
+    }
+
+    private static void writeCards(DataOutputStream out, int[] cards) throws IOException {
+        for (int card : cards)
+            out.writeInt(card);
+    }
+
+    /**
+     * Reads distinct cards in [0, deckSize) (or -1 for an empty slot, if allowed).
+     */
+    private static int[] readCards(DataInputStream in, int length, int deckSize, boolean empty, String name)
+            throws IOException {
+        int[] cards = new int[length];
+        boolean[] seen = new boolean[deckSize];
+        for (int i = 0; i < length; i++) {
+            cards[i] = in.readInt();
+            if (empty && cards[i] == -1) continue;
+            if (cards[i] < 0 || cards[i] >= deckSize || seen[cards[i]])
+                throw new IOException("invalid card in the " + name + ": " + cards[i]);
+            seen[cards[i]] = true;
+        }
+        return cards;
+    }
+
+    /**
+     * Reads the distinct token slots of a player, each on a slot that has a card.
+     */
+    private static int[] readSlots(DataInputStream in, int length, int[] slotToCard, int player) throws IOException {
+        int[] slots = new int[length];
+        boolean[] seen = new boolean[slotToCard.length];
+        for (int i = 0; i < length; i++) {
+            slots[i] = in.readUnsignedShort();
+            if (slots[i] >= slotToCard.length || slotToCard[slots[i]] < 0 || seen[slots[i]])
+                throw new IOException("invalid token slot of player " + (player + 1) + ": " + slots[i]);
+            seen[slots[i]] = true;
+        }
+        return slots;
+    }
+}
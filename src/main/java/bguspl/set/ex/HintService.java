@@ -0,0 +1,144 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class computes the hints (all the legal sets on the table) on a background thread, from immutable table
+ * snapshots, so the dealer never computes or prints them while holding the table lock.
+ * The hints of the latest computed table version are cached, and the number of sets of every computed table is
+ * reported to the game analytics. Nothing is computed if both hints and analytics are disabled.
+ */
+public class HintService {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The statistics the number of sets of every table is reported to.
+     */
+    private final GameAnalytics analytics;
+
+    /**
+     * True iff the tables are computed (when hints or analytics are enabled).
+     */
+    private final boolean enabled;
+
+    /**
+     * The thread computing the hints.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The newest snapshot that waits to be computed (null if none).
+     */
+    private final AtomicReference<TableSnapshot> pending = new AtomicReference<TableSnapshot>();
+
+    /**
+     * The hints of a single table version (the sorted slots of each legal set).
+     */
+    private static class Hints {
+        private final long version;
+        private final List<int[]> sets;
+
+        private Hints(long version, List<int[]> sets) {
+            this.version = version;
+            this.sets = sets;
+        }
+    }
+
+    /**
+     * The cached hints of the latest computed table version.
+     */
+    private volatile Hints cached = new Hints(-1, Collections.<int[]>emptyList());
+
+    public HintService(Env env, GameAnalytics analytics) {
+        this.env = env;
+        this.analytics = analytics;
+        this.enabled = env.config.hints || analytics.enabled();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hints");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Computes (and prints, if hints are enabled) the hints of a table snapshot in the background.
+     * If several snapshots are published before the computation starts, only the newest one is computed.
+     * @param snapshot - the table snapshot.
+     */
+    public void publish(TableSnapshot snapshot) {
+        if (!enabled) return;
+        if (pending.getAndSet(snapshot) == null)
+            executor.execute(this::compute);
+    }
+
+    /**
+     * @return - the table version of the cached hints.
+     */
+    public long getVersion() {
+        return cached.version;
+    }
+
+    /**
+     * @return - the cached hints of the latest computed table version (the sorted slots of each legal set).
+     */
+    public List<int[]> getHints() {
+        return cached.sets;
+    }
+
+    /**
+     * @param version - a table version.
+     * @return        - the hints of the table version, or null if they were not computed (yet).
+     */
+    public List<int[]> getHints(long version) {
+        Hints hints = cached;
+        return hints.version == version ? hints.sets : null;
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void compute() {
+        TableSnapshot snapshot = pending.getAndSet(null);
+        if (snapshot == null || snapshot.version == cached.version) return;
+        if (!env.config.hints) { // only the analytics need the table: count its sets without collecting them
+            analytics.setsDealt(snapshot.countSets(env.util));
+            return;
+        }
+
+        int[] cardToSlot = new int[env.config.deckSize];
+        for (int slot = 0; slot < snapshot.size(); slot++)
+            if (snapshot.card(slot) >= 0)
+                cardToSlot[snapshot.card(slot)] = slot;
+
+        List<int[]> slots = new ArrayList<int[]>();
+        snapshot.forEachSet(env.util, set -> {
+            int[] setSlots = new int[set.length];
+            for (int i = 0; i < set.length; i++)
+                setSlots[i] = cardToSlot[set[i]];
+            Arrays.sort(setSlots);
+            slots.add(setSlots);
+            System.out.println("Hint: Set found: slots: " + Arrays.toString(setSlots) + " features: "
+                    + Arrays.deepToString(env.util.cardsToFeatures(set)));
+            return true;
+        });
+
+        cached = new Hints(snapshot.version, Collections.unmodifiableList(slots));
+        analytics.setsDealt(slots.size());
+    }
+}
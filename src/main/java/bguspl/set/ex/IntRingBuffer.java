@@ -0,0 +1,123 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, allocation free queue of non-negative ints (e.g. the slots of key presses).
+ * Any number of threads may offer, poll and clear (a lock free ring buffer with a sequence number per cell), and a
+ * single consumer thread at a time may block in take until an element arrives (park / unpark).
+ */
+public class IntRingBuffer {
+
+    /**
+     * The value returned by poll when the queue is empty.
+     */
+    public static final int EMPTY = -1;
+
+    private final int capacity;
+
+    /**
+     * The elements, and the sequence number of each cell (the position it can be written at or read from next).
+     */
+    private final int[] values;
+    private final AtomicLongArray sequences;
+
+    /**
+     * The positions of the next offer and the next poll.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The thread blocked in take (null if none).
+     */
+    private volatile Thread consumer;
+
+    public IntRingBuffer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.values = new int[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            sequences.set(i, i);
+    }
+
+    /**
+     * Inserts a value if the queue is not full, and wakes up the consumer blocked in take (if any).
+     * @param value - a non-negative value.
+     * @return      - true iff the value was inserted.
+     */
+    public boolean offer(int value) {
+        while (true) {
+            long position = tail.get();
+            int cell = (int) (position % capacity);
+            long difference = sequences.get(cell) - position;
+            if (difference < 0) return false; // full
+            if (difference == 0 && tail.compareAndSet(position, position + 1)) {
+                values[cell] = value;
+                sequences.set(cell, position + 1);
+                Thread waiter = consumer;
+                if (waiter != null) LockSupport.unpark(waiter);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest value.
+     * @return - the value, or EMPTY if the queue is empty.
+     */
+    public int poll() {
+        while (true) {
+            long position = head.get();
+            int cell = (int) (position % capacity);
+            long difference = sequences.get(cell) - (position + 1);
+            if (difference < 0) return EMPTY;
+            if (difference == 0 && head.compareAndSet(position, position + 1)) {
+                int value = values[cell];
+                sequences.set(cell, position + capacity);
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest value, waiting until one is available.
+     * @return - the value.
+     * @throws InterruptedException - if the thread is interrupted while waiting.
+     */
+    public int take() throws InterruptedException {
+        int value = poll();
+        if (value != EMPTY) return value;
+        consumer = Thread.currentThread();
+        try {
+            while ((value = poll()) == EMPTY) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+            return value;
+        } finally {
+            consumer = null;
+        }
+    }
+
+    /**
+     * Removes all the values.
+     */
+    public void clear() {
+        while (poll() != EMPTY) ;
+    }
+
+    /**
+     * @return - the number of values in the queue.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(capacity, tail.get() - head.get()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,442 @@
+package bguspl.set.ex;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A persistent leaderboard of the cumulative statistics of every player name, shared by all the games on the host.
+ *
+ * The leaderboard is a memory-mapped file of fixed size records (an open addressing hash table of the names, with
+ * linear probing) and a top index of the records with the most points. Every record and the index are versioned with
+ * a sequence lock: a writer makes the sequence odd, updates the record and makes it even again, and a reader retries
+ * until it reads the same even sequence before and after reading. So readers never lock, and never block the writers.
+ * A writer that stops in the middle of a write (e.g. its process is killed) leaves an odd sequence: the next writer of
+ * the record (which holds its lock) goes on from it, and a reader that waited too long takes the writer's locks and,
+ * if no writer holds them, makes the sequence even again (or fails if another process holds them for too long).
+ * A writer locks only the record it updates (a file region lock between processes, and a lock stripe between the
+ * threads of a process), and the index only when the player enters or moves in it, so concurrent games updating
+ * different players never wait for each other.
+ *
+ * File format (big endian): header (magic, format version, capacity, top size), the index (sequence, count, and then
+ * the record and points of every entry, by descending points) and the records (sequence, name length and UTF-8 bytes,
+ * games, wins, points, best score and the time of the last game).
+ */
+public class Leaderboard {
+
+    private static final int MAGIC = 0x5345544c; // "SETL"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The default number of records, and the number of entries in the top index.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final int TOP_SIZE = 100;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int INDEX_OFFSET = HEADER_SIZE;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int INDEX_SIZE = 16 + TOP_SIZE * INDEX_ENTRY_SIZE;
+    private static final int RECORDS_OFFSET = INDEX_OFFSET + INDEX_SIZE;
+
+    private static final int RECORD_SIZE = 128;
+    private static final int MAX_NAME_BYTES = 64;
+    private static final int NAME_LENGTH = 8;
+    private static final int NAME = 12;
+    private static final int GAMES = 80;
+    private static final int WINS = 88;
+    private static final int POINTS = 96;
+    private static final int BEST_SCORE = 104;
+    private static final int LAST_PLAYED = 112;
+
+    private static final long LOCK_RETRY_NANOS = 50_000;
+
+    /**
+     * The time a reader waits for a writer (that holds a record only for microseconds) before it checks whether the
+     * writer stopped in the middle of its write.
+     */
+    private static final long READ_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * The locks of the records between the threads of this process (file region locks are held by the whole process).
+     */
+    private static final Object[] stripes = new Object[64];
+    private static final Object indexStripe = new Object();
+
+    static {
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Object();
+    }
+
+    /**
+     * The cumulative statistics of a player name.
+     */
+    public static class Entry {
+        public final String name;
+        public final long games;
+        public final long wins;
+        public final long points;
+        public final long bestScore;
+        public final long lastPlayed;
+
+        private Entry(String name, long games, long wins, long points, long bestScore, long lastPlayed) {
+            this.name = name;
+            this.games = games;
+            this.wins = wins;
+            this.points = points;
+            this.bestScore = bestScore;
+            this.lastPlayed = lastPlayed;
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private Leaderboard(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Opens the leaderboard file, creating it if it does not exist.
+     * @param file     - the leaderboard file.
+     * @param capacity - the number of records of a new file (rounded up to a power of two).
+     * @return         - the leaderboard.
+     * @throws IOException - if the file cannot be opened or is not a leaderboard file.
+     */
+    public static Leaderboard open(Path file, int capacity) throws IOException {
+        if (capacity <= 0 || capacity > (Integer.MAX_VALUE - RECORDS_OFFSET) / RECORD_SIZE / 2)
+            throw new IllegalArgumentException("invalid leaderboard capacity: " + capacity);
+        if (file.toAbsolutePath().getParent() != null) Files.createDirectories(file.toAbsolutePath().getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                if (channel.size() == 0) {
+                    if (Integer.highestOneBit(capacity) != capacity) capacity = Integer.highestOneBit(capacity) << 1;
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(capacity).putInt(TOP_SIZE);
+                    header.flip();
+                    channel.write(ByteBuffer.allocate(1), RECORDS_OFFSET + (long) capacity * RECORD_SIZE - 1);
+                    channel.write(header, 0);
+                }
+            } finally {
+                lock.release();
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(12) != TOP_SIZE)
+                throw new IOException("not a leaderboard file (or an unsupported version): " + file);
+            int fileCapacity = buffer.getInt(8);
+            if (channel.size() != RECORDS_OFFSET + (long) fileCapacity * RECORD_SIZE)
+                throw new IOException("the leaderboard file is truncated: " + file);
+            return new Leaderboard(channel, buffer, fileCapacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Adds the result of a game to the statistics of its players.
+     * @param names   - the names of the players.
+     * @param scores  - the scores of the players.
+     * @param winners - true for every player that won the game.
+     * @throws IOException - if the leaderboard is full or the file cannot be locked.
+     */
+    public void record(String[] names, int[] scores, boolean[] winners) throws IOException {
+        long now = System.currentTimeMillis();
+        for (int player = 0; player < names.length; player++)
+            updateIndex(update(names[player], scores[player], winners[player], now));
+    }
+
+    /**
+     * Adds a game to the record of a name (claiming an empty record if the name has none).
+     * @return - the record of the name.
+     */
+    private int update(String name, int score, boolean winner, long now) throws IOException {
+        byte[] bytes = nameBytes(name);
+        int hash = Arrays.hashCode(bytes) * 0x9e3779b9;
+        for (int probe = 0; probe < capacity; probe++) {
+            int record = (hash + probe) & (capacity - 1);
+            int offset = offset(record);
+            synchronized (stripes[record & (stripes.length - 1)]) {
+                FileLock lock = lock(offset, RECORD_SIZE);
+                try {
+                    int length = buffer.getInt(offset + NAME_LENGTH);
+                    if (length != 0 && !nameEquals(offset, bytes)) continue;
+
+                    beginWrite(offset);
+                    if (length == 0) {
+                        for (int i = 0; i < bytes.length; i++)
+                            buffer.put(offset + NAME + i, bytes[i]);
+                        buffer.putInt(offset + NAME_LENGTH, bytes.length);
+                    }
+                    buffer.putLong(offset + GAMES, buffer.getLong(offset + GAMES) + 1);
+                    if (winner) buffer.putLong(offset + WINS, buffer.getLong(offset + WINS) + 1);
+                    buffer.putLong(offset + POINTS, buffer.getLong(offset + POINTS) + score);
+                    buffer.putLong(offset + BEST_SCORE, Math.max(score, buffer.getLong(offset + BEST_SCORE)));
+                    buffer.putLong(offset + LAST_PLAYED, now);
+                    endWrite(offset);
+                    return record;
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+        throw new IOException("the leaderboard is full (" + capacity + " names)");
+    }
+
+    /**
+     * Moves a record to its place in the top index (if it is in the top by its points).
+     */
+    private void updateIndex(int record) throws IOException {
+        long points = read(record).points;
+        int count = buffer.getInt(INDEX_OFFSET + 8);
+        if (count == TOP_SIZE && points <= indexPoints(TOP_SIZE - 1) && !inIndex(record, count))
+            return; // not in the top (checked without the lock, and again with it)
+
+        synchronized (indexStripe) {
+            FileLock lock = lock(INDEX_OFFSET, INDEX_SIZE);
+            try {
+                count = buffer.getInt(INDEX_OFFSET + 8);
+                points = read(record).points; // the latest points (other games may have updated the record)
+                int position = count;
+                for (int i = 0; i < count; i++)
+                    if (indexRecord(i) == record) position = i;
+                if (position == count && count == TOP_SIZE && points <= indexPoints(TOP_SIZE - 1)) return;
+
+                beginWrite(INDEX_OFFSET);
+                if (position == count && count < TOP_SIZE) count++;
+                else if (position == count) position = TOP_SIZE - 1; // replaces the last entry
+                // move the entry up (points only grow) to keep the index sorted by descending points
+                while (position > 0 && indexPoints(position - 1) < points) {
+                    setIndexEntry(position, indexRecord(position - 1), indexPoints(position - 1));
+                    position--;
+                }
+                setIndexEntry(position, record, points);
+                buffer.putInt(INDEX_OFFSET + 8, count);
+                endWrite(INDEX_OFFSET);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Locks a region of the file, waiting while another process holds it. The lock is polled since the file locks are
+     * held by the whole process, and a blocking lock could fail with a false deadlock between the threads of two games.
+     */
+    private FileLock lock(long position, long size) throws IOException {
+        FileLock lock;
+        while ((lock = channel.tryLock(position, size, false)) == null)
+            LockSupport.parkNanos(LOCK_RETRY_NANOS);
+        return lock;
+    }
+
+    private boolean inIndex(int record, int count) {
+        for (int i = 0; i < count; i++)
+            if (indexRecord(i) == record) return true;
+        return false;
+    }
+
+    private int indexRecord(int position) {
+        return buffer.getInt(INDEX_OFFSET + 16 + position * INDEX_ENTRY_SIZE);
+    }
+
+    private long indexPoints(int position) {
+        return buffer.getLong(INDEX_OFFSET + 16 + position * INDEX_ENTRY_SIZE + 8);
+    }
+
+    private void setIndexEntry(int position, int record, long points) {
+        buffer.putInt(INDEX_OFFSET + 16 + position * INDEX_ENTRY_SIZE, record);
+        buffer.putLong(INDEX_OFFSET + 16 + position * INDEX_ENTRY_SIZE + 8, points);
+    }
+
+    /**
+     * @param name - a player name.
+     * @return     - the statistics of the name, or null if it never played.
+     * @throws IOException - if another process holds the name's record for too long.
+     */
+    public Entry get(String name) throws IOException {
+        int record = recordOf(name);
+        return record < 0 ? null : read(record);
+    }
+
+    /**
+     * @param count - the maximum number of entries.
+     * @return      - the names with the most points, by descending points.
+     * @throws IOException - if another process holds the index or a record for too long.
+     */
+    public List<Entry> top(int count) throws IOException {
+        int[] records = new int[Math.min(count, TOP_SIZE)];
+        int length;
+        while (true) {
+            long sequence = beginRead(INDEX_OFFSET);
+            length = Math.min(records.length, buffer.getInt(INDEX_OFFSET + 8));
+            for (int i = 0; i < length; i++)
+                records[i] = indexRecord(i);
+            if (endRead(INDEX_OFFSET, sequence)) break;
+        }
+        List<Entry> top = new ArrayList<Entry>(length);
+        for (int i = 0; i < length; i++)
+            top.add(read(records[i]));
+        return top;
+    }
+
+    /**
+     * @return - the record of a name, or -1 if it has none.
+     */
+    private int recordOf(String name) throws IOException {
+        byte[] bytes = nameBytes(name);
+        int hash = Arrays.hashCode(bytes) * 0x9e3779b9;
+        for (int probe = 0; probe < capacity; probe++) {
+            int record = (hash + probe) & (capacity - 1);
+            int offset = offset(record);
+            while (true) {
+                long sequence = beginRead(offset);
+                int length = buffer.getInt(offset + NAME_LENGTH);
+                boolean equals = length != 0 && nameEquals(offset, bytes);
+                if (!endRead(offset, sequence)) continue;
+                if (length == 0) return -1; // names are never removed, so the probing ends at an empty record
+                if (equals) return record;
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private Entry read(int record) throws IOException {
+        int offset = offset(record);
+        while (true) {
+            long sequence = beginRead(offset);
+            int length = Math.min(buffer.getInt(offset + NAME_LENGTH), MAX_NAME_BYTES);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = buffer.get(offset + NAME + i);
+            Entry entry = new Entry(new String(bytes, StandardCharsets.UTF_8), buffer.getLong(offset + GAMES),
+                    buffer.getLong(offset + WINS), buffer.getLong(offset + POINTS), buffer.getLong(offset + BEST_SCORE),
+                    buffer.getLong(offset + LAST_PLAYED));
+            if (endRead(offset, sequence)) return entry;
+        }
+    }
+
+    private static int offset(int record) {
+        return RECORDS_OFFSET + record * RECORD_SIZE;
+    }
+
+    private static byte[] nameBytes(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= MAX_NAME_BYTES) return bytes;
+        byte[] truncated = new byte[MAX_NAME_BYTES];
+        System.arraycopy(bytes, 0, truncated, 0, MAX_NAME_BYTES);
+        return truncated;
+    }
+
+    private boolean nameEquals(int offset, byte[] bytes) {
+        if (buffer.getInt(offset + NAME_LENGTH) != bytes.length) return false;
+        for (int i = 0; i < bytes.length; i++)
+            if (buffer.get(offset + NAME + i) != bytes[i]) return false;
+        return true;
+    }
+
+    /**
+     * Makes the sequence of a record or the index odd (holding its locks). An odd sequence was left by a writer that
+     * stopped in the middle of its write, and the write goes on from it. The odd sequence is stored before the data.
+     */
+    private void beginWrite(int offset) {
+        buffer.putLong(offset, buffer.getLong(offset) | 1);
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * Makes the sequence of a record or the index even again, after the data is stored.
+     */
+    private void endWrite(int offset) {
+        VarHandle.releaseFence();
+        buffer.putLong(offset, buffer.getLong(offset) + 1);
+    }
+
+    /**
+     * @return - the (even) sequence of a record or the index, waiting while it is written (loaded before the data).
+     * @throws IOException - if another process holds it for too long.
+     */
+    private long beginRead(int offset) throws IOException {
+        long sequence;
+        long deadline = System.nanoTime() + READ_WAIT_NANOS;
+        while (((sequence = buffer.getLong(offset)) & 1) != 0) {
+            if (System.nanoTime() - deadline < 0) Thread.yield();
+            else {
+                recover(offset);
+                deadline = System.nanoTime() + READ_WAIT_NANOS;
+            }
+        }
+        VarHandle.acquireFence();
+        return sequence;
+    }
+
+    /**
+     * Makes the odd sequence of a record or the index even if no writer holds its locks, i.e. if its writer stopped in
+     * the middle of its write (the partial write is kept).
+     * @throws IOException - if another process holds the lock.
+     */
+    private void recover(int offset) throws IOException {
+        boolean index = offset == INDEX_OFFSET;
+        synchronized (index ? indexStripe : stripes[(offset - RECORDS_OFFSET) / RECORD_SIZE & (stripes.length - 1)]) {
+            FileLock lock = channel.tryLock(offset, index ? INDEX_SIZE : RECORD_SIZE, false);
+            if (lock == null) throw new IOException("the leaderboard is held by another process for too long");
+            try {
+                long sequence = buffer.getLong(offset);
+                if ((sequence & 1) != 0) buffer.putLong(offset, sequence + 1);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * @return - true iff the record or the index was not written since beginRead (loaded after the data).
+     */
+    private boolean endRead(int offset, long sequence) {
+        VarHandle.loadLoadFence();
+        return buffer.getLong(offset) == sequence;
+    }
+
+    /**
+     * Prints the top of a leaderboard file.
+     * Usage: Leaderboard &lt;leaderboard file&gt; [count]
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args[0]);
+        if (!Files.exists(file)) throw new IOException("no leaderboard file " + file);
+        Leaderboard leaderboard = open(file, DEFAULT_CAPACITY);
+        try {
+            int rank = 0;
+            System.out.printf("%4s %-32s %10s %10s %12s %8s%n", "rank", "name", "games", "wins", "points", "best");
+            for (Entry entry : leaderboard.top(args.length > 1 ? Integer.parseInt(args[1]) : TOP_SIZE))
+                System.out.printf("%4d %-32s %10d %10d %12d %8d%n", ++rank, entry.name, entry.games, entry.wins,
+                        entry.points, entry.bestScore);
+        } finally {
+            leaderboard.close();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package bguspl.set.ex;
+
+import bguspl.set.CompletionTable;
+import bguspl.set.Config;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+/**
+ * A Monte Carlo analysis of game configurations, using the game's Util on all the processors (fork/join) without a
+ * user interface. For every configuration of a parameter grid it estimates:
+ * - the probability that a random table holds no legal set, from random deals of the full deck.
+ * - the expected number of reshuffles and the expected length of a game, from simulated games, where the dealer deals
+ *   as in the game (from the top of the shuffled deck), replaces every found set, and reshuffles on a timeout or when
+ *   the table holds no set, until no legal set is left in the game. As in the game, every deal, set replacement and
+ *   reshuffle costs a single table delay.
+ *
+ * The players are modelled by the time it takes them to find a set on the table: exponentially distributed, with a
+ * mean of SecondsPerSet (e.g. the mean time to find of the game analytics). A set is found only if it is found before
+ * the turn timeout. The found set is chosen uniformly among the sets on the table.
+ *
+ * Usage: MonteCarloAnalysis [config file] [deals] [games] [Key=value1,value2,...]...
+ * e.g. MonteCarloAnalysis config.properties 1000000 100000 FeatureCount=3,4 Rows=3,4 TurnTimeoutSeconds=30,60
+ */
+public class MonteCarloAnalysis {
+
+    /**
+     * The deals and games simulated by a single task (the work is split until it is that small).
+     */
+    private static final int DEALS_PER_TASK = 1 << 14;
+    private static final int GAMES_PER_TASK = 1 << 6;
+
+    /**
+     * The totals of simulated deals and games (merged from the tasks).
+     */
+    private static class Totals {
+        private long deals;
+        private long setFreeDeals;
+        private long games;
+        private double reshuffles;
+        private long setFreeReshuffles;
+        private double gameMillis;
+        private double gameMillisSquared;
+        private long setsFound;
+        private long cardsLeft;
+
+        private void add(Totals other) {
+            deals += other.deals;
+            setFreeDeals += other.setFreeDeals;
+            games += other.games;
+            reshuffles += other.reshuffles;
+            setFreeReshuffles += other.setFreeReshuffles;
+            gameMillis += other.gameMillis;
+            gameMillisSquared += other.gameMillisSquared;
+            setsFound += other.setsFound;
+            cardsLeft += other.cardsLeft;
+        }
+    }
+
+    /**
+     * Simulates a range of deals and games, splitting it in two halves (each with its own random generator) while
+     * it is larger than a single task.
+     */
+    @SuppressWarnings("serial") // the tasks are never serialized
+    private static class SimulationTask extends RecursiveTask<Totals> {
+
+        private final Config config;
+        private final Util util;
+        private final double millisPerSet;
+        private final long deals;
+        private final long games;
+        private final SplittableRandom random;
+
+        private SimulationTask(Config config, Util util, double millisPerSet, long deals, long games, SplittableRandom random) {
+            this.config = config;
+            this.util = util;
+            this.millisPerSet = millisPerSet;
+            this.deals = deals;
+            this.games = games;
+            this.random = random;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (deals > DEALS_PER_TASK || games > GAMES_PER_TASK) {
+                SimulationTask first = new SimulationTask(config, util, millisPerSet, deals / 2, games / 2, random.split());
+                SimulationTask second = new SimulationTask(config, util, millisPerSet, deals - deals / 2, games - games / 2, random);
+                first.fork();
+                Totals totals = second.compute();
+                totals.add(first.join());
+                return totals;
+            }
+            Simulation simulation = new Simulation(config, util, millisPerSet, random);
+            for (long i = 0; i < deals; i++)
+                simulation.deal();
+            for (long i = 0; i < games; i++)
+                simulation.game();
+            return simulation.totals;
+        }
+    }
+
+    /**
+     * The state of a single simulation task: primitive decks reused by all its deals and games.
+     */
+    private static class Simulation implements Util.SetVisitor {
+
+        private final Config config;
+        private final Util util;
+        private final double millisPerSet;
+        private final SplittableRandom random;
+        private final Totals totals = new Totals();
+
+        /**
+         * The dealer's deck (the top card is the last one), the cards on the table, and the remaining cards of the
+         * game (to check if the game is over).
+         */
+        private final int[] deck;
+        private int deckCount;
+        private final int[] table;
+        private int tableCount;
+        private final int[] remaining;
+
+        /**
+         * The set chosen among the sets on the table (by reservoir sampling), and the number of sets visited.
+         */
+        private final int[] chosen;
+        private int visited;
+
+        private Simulation(Config config, Util util, double millisPerSet, SplittableRandom random) {
+            this.config = config;
+            this.util = util;
+            this.millisPerSet = millisPerSet;
+            this.random = random;
+            deck = new int[config.deckSize];
+            table = new int[config.tableSize];
+            remaining = new int[config.deckSize];
+            chosen = new int[config.featureSize];
+        }
+
+        @Override
+        public boolean visit(int[] cards) {
+            if (random.nextInt(++visited) == 0)
+                System.arraycopy(cards, 0, chosen, 0, chosen.length);
+            return true;
+        }
+
+        private void resetDeck() {
+            for (int card = 0; card < deck.length; card++)
+                deck[card] = card;
+            deckCount = deck.length;
+        }
+
+        /**
+         * Draws a card from the top of the deck, as if the deck was shuffled (a step of Fisher-Yates).
+         */
+        private int draw() {
+            int position = random.nextInt(deckCount);
+            int card = deck[position];
+            deck[position] = deck[--deckCount];
+            deck[deckCount] = card;
+            return card;
+        }
+
+        private void fillTable() {
+            while (tableCount < table.length && deckCount > 0)
+                table[tableCount++] = draw();
+        }
+
+        /**
+         * Deals a random table from the full deck.
+         */
+        private void deal() {
+            resetDeck();
+            tableCount = 0;
+            fillTable();
+            totals.deals++;
+            if (!util.anySet(table, tableCount))
+                totals.setFreeDeals++;
+        }
+
+        /**
+         * Simulates a full game, until no legal set is left in the game.
+         */
+        private void game() {
+            long timeout = config.turnTimeoutMillis;
+            long millis = 0;
+            int reshuffles = 0;
+            resetDeck();
+            tableCount = 0;
+            fillTable();
+            millis += config.tableDelayMillis;
+            while (true) {
+                visited = 0;
+                util.forEachSet(table, tableCount, this);
+                long findMillis = visited == 0 ? Long.MAX_VALUE : (long) (-millisPerSet * Math.log(1 - random.nextDouble()));
+                if (timeout <= 0 || findMillis < timeout) {
+                    if (visited > 0) {
+                        // the set is found and replaced, and the countdown is reset
+                        millis += findMillis;
+                        replaceSet();
+                        millis += config.tableDelayMillis;
+                        totals.setsFound++;
+                        continue;
+                    }
+                } else millis += timeout;
+
+                if (!anySetLeft()) break;
+                if (visited == 0) totals.setFreeReshuffles++;
+                reshuffles++;
+                for (int i = 0; i < tableCount; i++)
+                    deck[deckCount++] = table[i]; // the deck is shuffled by drawing the cards randomly
+                tableCount = 0;
+                fillTable();
+                millis += config.tableDelayMillis; // the table is replaced at once
+            }
+            totals.games++;
+            totals.reshuffles += reshuffles;
+            totals.gameMillis += millis;
+            totals.gameMillisSquared += (double) millis * millis;
+            totals.cardsLeft += tableCount + deckCount;
+        }
+
+        /**
+         * Removes the chosen set from the table and fills its slots from the deck.
+         */
+        private void replaceSet() {
+            for (int card : chosen)
+                for (int i = 0; i < tableCount; i++)
+                    if (table[i] == card) {
+                        table[i] = table[--tableCount];
+                        break;
+                    }
+            fillTable();
+        }
+
+        private boolean anySetLeft() {
+            System.arraycopy(table, 0, remaining, 0, tableCount);
+            System.arraycopy(deck, 0, remaining, tableCount, deckCount);
+            return util.anySet(remaining, tableCount + deckCount);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Properties properties = new Properties();
+        if (args.length > 0)
+            try (InputStream is = Files.newInputStream(Paths.get(args[0]))) {
+                properties.load(is);
+            }
+        long deals = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+        long games = args.length > 2 ? Long.parseLong(args[2]) : 10_000;
+        properties.setProperty("LogLevel", "WARNING");
+        for (int i = 1; i <= 2; i++)
+            properties.setProperty("PlayerKeys" + i, ""); // no keyboard (the default keys only fit the default table)
+
+        List<String[]> grid = new ArrayList<String[]>();
+        for (int i = 3; i < args.length; i++) {
+            int equals = args[i].indexOf('=');
+            if (equals <= 0) throw new IllegalArgumentException("expected Key=value1,value2,... but got " + args[i]);
+            grid.add(new String[]{args[i].substring(0, equals), args[i].substring(equals + 1)});
+        }
+
+        Logger logger = Logger.getLogger("SetMonteCarlo");
+        System.out.printf("%-50s %14s %10s %10s %10s %10s %12s %10s %8s%n", "configuration", "P(set-free)",
+                "reshuffles", "(set-free)", "sets", "cards left", "game (s)", "+- (s)", "time (s)");
+        sweep(properties, grid, 0, "", deals, games, logger);
+    }
+
+    /**
+     * Simulates every configuration of the grid (the cartesian product of the values of its keys).
+     */
+    private static void sweep(Properties properties, List<String[]> grid, int key, String name, long deals, long games,
+                              Logger logger) {
+        if (key < grid.size()) {
+            for (String value : grid.get(key)[1].split(",")) {
+                Properties point = new Properties();
+                point.putAll(properties);
+                point.setProperty(grid.get(key)[0], value.trim());
+                sweep(point, grid, key + 1, name + grid.get(key)[0] + "=" + value.trim() + " ", deals, games, logger);
+            }
+            return;
+        }
+
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config, CompletionTable.load(config, logger));
+        double millisPerSet = Double.parseDouble(properties.getProperty("SecondsPerSet", "10")) * 1000.0;
+
+        long start = System.nanoTime();
+        Totals totals = ForkJoinPool.commonPool().invoke(
+                new SimulationTask(config, util, millisPerSet, deals, games, new SplittableRandom()));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double setFree = totals.deals == 0 ? 0 : (double) totals.setFreeDeals / totals.deals;
+        double n = Math.max(1, totals.games);
+        double reshuffles = totals.reshuffles / n;
+        double gameSeconds = totals.gameMillis / n / 1000.0;
+        double gameDeviation = Math.sqrt(Math.max(0, totals.gameMillisSquared / n - Math.pow(totals.gameMillis / n, 2))) / 1000.0;
+        System.out.printf("%-50s %14.8f %10.3f %10.3f %10.2f %10.2f %12.1f %10.1f %8.2f%n",
+                name.isEmpty() ? "(config file)" : name.trim(), setFree, reshuffles, totals.setFreeReshuffles / n,
+                totals.setsFound / n, totals.cardsLeft / n, gameSeconds, gameDeviation, seconds);
+    }
+}
@@ -1,9 +1,11 @@
 package bguspl.set.ex;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 import bguspl.set.Env;
+import bguspl.set.FlightEvents;
 
 
 
@@ -35,11 +37,6 @@ public class Player implements Runnable {
      */
     private Thread playerThread;
 
-    /**
-     * The thread of the AI (computer) player (an additional thread used to generate key presses).
-     */
-    private Thread aiThread;
-
     /**
      * True iff the player is human (not a computer player).
      */
@@ -53,10 +50,24 @@ public class Player implements Runnable {
     /**
      * The current score of the player.
      */
-    private int score;
+    private volatile int score;
 
     private Dealer dealer;
-    private LinkedBlockingQueue<Integer> keyPresses; //the human/AI key presses
+    private final IntRingBuffer keyPresses; //the human/AI key presses
+
+    /**
+     * The key presses ignored because the player could not play (frozen, waiting for the dealer or terminated), and
+     * the key presses dropped because the queue was full.
+     */
+    private final LongAdder rejectedPresses = new LongAdder();
+    private final LongAdder droppedPresses = new LongAdder();
+
+    /**
+     * The slots of the set the player claims in optimistic commit mode, and the callback queueing the claim at the
+     * dealer (both reused by every claim, the dealer copies the slots).
+     */
+    private final int[] claimedSlots;
+    private final Consumer<int[]> acceptClaim;
 
     private final long SECOND=900;//to prevent jump timing
     enum State
@@ -67,7 +78,7 @@ public class Player implements Runnable {
         Point
     }
 
-    protected State state = State.Availble;
+    protected volatile State state = State.Availble;
   
 
     /**
@@ -88,7 +99,9 @@ public class Player implements Runnable {
         this.playerThread = new Thread(this,"Player "+this.id);
         
         this.dealer = dealer;
-        keyPresses = new LinkedBlockingQueue<Integer>(env.config.featureSize-1);
+        keyPresses = new IntRingBuffer(env.config.featureSize-1);
+        claimedSlots = new int[env.config.featureSize];
+        acceptClaim = slots -> this.dealer.acceptClaimedSlots(slots);
 
     }
 
@@ -109,18 +122,16 @@ public class Player implements Runnable {
            
             // TODO implement main player loop
             try{
-                synchronized(keyPresses){
-                    while(keyPresses.isEmpty()) 
-                        keyPresses.wait(); 
-                }                  
-
-                Integer chosenSlot = keyPresses.take();
+                int chosenSlot = keyPresses.take();
 
                 if(! table.removeToken(id, chosenSlot))
                 {
                     if(!table.completedSet(id)){ //check if the player can use another token
                         table.placeToken(id, chosenSlot);
-                        if(table.completedSet(id)){
+                        if(table.completedSet(id) && env.config.optimisticCommit){
+                            claimSet();
+                        }
+                        else if(table.completedSet(id)){
                             this.state = State.Waiting;
                             synchronized(this){
                                 dealer.acceptPlayerSet(id);
@@ -142,17 +153,34 @@ public class Player implements Runnable {
             }
             catch(InterruptedException e){};
         }
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
+        //the AI thread is stopped (and waited for) by the dealer's shutdown, together with all the players
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
+    /**
+     * Claims the completed set directly on the table (optimistic commit mode), without waiting for the dealer.
+     * The dealer is only notified to replace the claimed cards.
+     */
+    private void claimSet() {
+        this.state = table.claimSet(id, claimedSlots, acceptClaim);
+        switch(this.state)
+        {
+            case Point: dealer.getAnalytics().setFound(id); point(); break;
+            case Penalty: dealer.getAnalytics().penalty(id); penalty(); break;
+            default: return; //another player claimed one of the cards first
+        }
+        clearQueue();
+        this.state = State.Availble;
+    }
+
     /**
      * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
      * key presses. If the queue of key presses is full, the thread waits until it is not full.
      */
     private void createArtificialIntelligence() {
         // note: this is a very very smart AI (!)
-        aiThread = new Thread(() -> {
+        //the AI thread is started (on the session pool, if there is one) and stopped by the dealer
+        dealer.startThread(() -> {
             env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
             while (!terminate) {
                 // TODO implement player key press simulator
@@ -163,8 +191,7 @@ public class Player implements Runnable {
                 catch(Exception e){}
             }
             env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
-        aiThread.start();
+        }, "computer-" + id, this::terminate);
     }
 
     /**
@@ -182,12 +209,20 @@ public class Player implements Runnable {
      */
     public void keyPressed(int slot) {
         // TODO implement
-        if(this.state.equals(State.Availble)){
-            synchronized(keyPresses){
-                keyPresses.offer(slot);
-                keyPresses.notifyAll();
-            }
-        }           
+        if(terminate || this.state != State.Availble){
+            rejectedPresses.increment();
+            return;
+        }
+        if(!keyPresses.offer(slot)){
+            droppedPresses.increment();
+            return;
+        }
+        if(FlightEvents.keyPressEnabled()){
+            FlightEvents.KeyPress event = new FlightEvents.KeyPress();
+            event.player = id;
+            event.slot = slot;
+            event.commit();
+        }
     }
 
     /**
@@ -201,6 +236,7 @@ public class Player implements Runnable {
 
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
+        dealer.pointScored(); //the score is consistent with the table again (for the checkpoints)
         try{ 
             long freezeUntil = System.currentTimeMillis()+env.config.pointFreezeMillis;
             env.ui.setFreeze(id, env.config.pointFreezeMillis);
@@ -232,17 +268,44 @@ public class Player implements Runnable {
         return score;
     }
 
+    /**
+     * Restores the score of the player (when resuming a game), before the player thread starts.
+     * @param score - the score to restore.
+     */
+    public void restoreScore(int score) {
+        this.score = score;
+        env.ui.setScore(id, score);
+    }
+
+    /**
+     * Resets the player in place for a new game of the session, before the player thread starts again.
+     */
+    public void newGame() {
+        score = 0;
+        state = State.Availble;
+        clearQueue();
+        rejectedPresses.reset();
+        droppedPresses.reset();
+        terminate = false;
+    }
+
     public void clearQueue(){
-        synchronized(keyPresses){
-            this.keyPresses.clear();
-        }     
+        this.keyPresses.clear();
     }
 
     public int getId(){
         return id;
     }
 
-    public LinkedBlockingQueue<Integer> getPressesQueue(){
+    public long getRejectedPresses(){
+        return rejectedPresses.sum();
+    }
+
+    public long getDroppedPresses(){
+        return droppedPresses.sum();
+    }
+
+    public IntRingBuffer getPressesQueue(){
         return this.keyPresses;
     }
     
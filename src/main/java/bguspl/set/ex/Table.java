@@ -1,11 +1,14 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.FlightEvents;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 
 /**
@@ -31,16 +34,47 @@ public class Table {
     protected final Integer[] cardToSlot; // slot per card (if any)
 
     /**
-     * Mapping between a slot to the players that have a token on it
+     * Mapping between a slot to the players that have a token on it (a bit per player, in words of 64 players)
      */
-    private List<Integer>[] slotToPlayers;
+    private final AtomicLongArray slotToPlayers;
+    private final int playerWords;
+
+    /**
+     * Mapping between a player to the slots he has tokens on (in the order they were placed), and their number.
+     * Changed by the player under the read lock, or by the dealer under the write lock.
+     */
+    private final int[][] playerToSlots;
+    private final AtomicIntegerArray playerTokenCounts;
+
+    /**
+     * The versions and the cards of the set each player claims (reused by every claim of the player's thread).
+     */
+    private final int[][] claimVersions;
+    private final int[][] claimCards;
+
+    /**
+     * The version of each slot, changed whenever its card changes (even) or when its card is claimed (odd).
+     */
+    private final AtomicIntegerArray slotVersions;
+
+
     /**
-     * Mapping between a player to the slots he has tokens on
+     * The version of the cards on the table, incremented whenever a card is placed or removed.
      */
-    private List<Integer>[] playerToSlots; 
+    private long version;
 
+    /**
+     * The snapshot of the current cards on the table, republished by the dealer (the only writer of the cards) after
+     * every change. Readers use it for a consistent view of the table without acquiring the table lock.
+     */
+    private volatile TableSnapshot published;
 
-    public final ReentrantReadWriteLock tableLock = new ReentrantReadWriteLock(true);
+    /**
+     * The dealer changes the cards holding the write lock, and the players change their tokens holding the read lock.
+     * A StampedLock (not reentrant), since the read lock of a ReentrantReadWriteLock allocates a hold counter whenever
+     * the read lock is held by several players. The tryLock of both barges, and so does this one.
+     */
+    public final ReadWriteLock tableLock = new StampedLock().asReadWriteLock();
 
 
     /**
@@ -55,7 +89,14 @@ public class Table {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        
+        this.slotVersions = new AtomicIntegerArray(slotToCard.length);
+        this.playerWords = (env.config.players + 63) / 64;
+        this.slotToPlayers = new AtomicLongArray(slotToCard.length * playerWords);
+        this.playerToSlots = new int[env.config.players][env.config.featureSize];
+        this.playerTokenCounts = new AtomicIntegerArray(env.config.players);
+        this.claimVersions = new int[env.config.players][env.config.featureSize];
+        this.claimCards = new int[env.config.players][env.config.featureSize];
+        publish();
     }
 
     /**
@@ -69,11 +110,10 @@ public class Table {
      */
     public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot,ArrayList<Integer>[] slotToPlayers,ArrayList<Integer>[] playerToSlots) {
 
-        this.env = env;
-        this.slotToCard = slotToCard;
-        this.cardToSlot = cardToSlot;
-        this.slotToPlayers = slotToPlayers;
-        this.playerToSlots = playerToSlots;
+        this(env, slotToCard, cardToSlot);
+        for(int player=0; player<playerToSlots.length; player++)
+            for(int slot : playerToSlots[player])
+                addToken(player, slot);
     }
 
     /**
@@ -84,27 +124,25 @@ public class Table {
     public Table(Env env) {
 
         this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+    }
 
-        this.slotToPlayers = new List[slotToCard.length];
-        for(int i=0; i<slotToPlayers.length; i++)
-            slotToPlayers[i] = new CopyOnWriteArrayList<>();
-
-        this.playerToSlots = new List[env.config.players];
-        for(int i=0; i<playerToSlots.length; i++)
-            playerToSlots[i] = new CopyOnWriteArrayList<>();
+    /**
+     * Returns an immutable copy of the cards on the table, as of the last change. Does not acquire any lock.
+     *
+     * @return - the snapshot of the table.
+     */
+    public TableSnapshot snapshot() {
+        return published;
     }
 
     /**
-     * This method prints all possible legal sets of cards that are currently on the table.
+     * Publishes a snapshot of the current cards, called by the writer after every change of the cards.
      */
-    public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
-            StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
-            int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
-        });
+    private void publish() {
+        int[] cards = new int[slotToCard.length];
+        for (int slot = 0; slot < cards.length; slot++)
+            cards[slot] = slotToCard[slot] == null ? -1 : slotToCard[slot];
+        published = new TableSnapshot(version, cards);
     }
 
     /**
@@ -121,68 +159,89 @@ public class Table {
     }
 
     /**
-     * Places a card on the table in a grid slot.
-     * @param card - the card id to place in the slot.
-     * @param slot - the slot in which the card should be placed.
-     *
-     * @post - the card placed is on the table, in the assigned slot.
+     * Placesall the cards that are on the table a player token on a grid slot.
+     * @param player - the player the token belongs to.
+     * @param slot   - the slot on which to place the token.
      */
-    public void placeCard(int card, int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
-
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
-
+    public void placeToken(int player, int slot) {
         // TODO implement
         
-        env.ui.placeCard(card,slot);
+        boolean locked = tableLock.readLock().tryLock();
+        if(locked){
+            if(slotToCard[slot] != null && !isClaimed(slot) && !hasToken(player, slot)
+                    && playerTokenCounts.get(player) < playerToSlots[player].length){
+                addToken(player, slot);
+                env.ui.placeToken(player, slot);
+            }
+            tableLock.readLock().unlock();
+        }
+        tokenEvent(player, slot, true, !locked);
     }
 
     /**
-     * Removes a card from a grid slot on the table.
-     * @param slot - the slot from which to remove the card.
+     * @return - true iff the player has a token on the slot.
      */
-    public void removeCard(int slot) { 
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
-
-        // TODO implement
+    private boolean hasToken(int player, int slot){
+        return (slotToPlayers.get(slot*playerWords + (player>>>6)) & (1L << player)) != 0;
+    }
 
-        int removedCard = slotToCard[slot];
-        cardToSlot[removedCard] = null;
-        slotToCard[slot] = null;
+    private void addToken(int player, int slot){
+        int count = playerTokenCounts.get(player);
+        playerToSlots[player][count] = slot;
+        playerTokenCounts.set(player, count+1);
+        int word = slot*playerWords + (player>>>6);
+        long bits;
+        do{
+            bits = slotToPlayers.get(word);
+        }while(!slotToPlayers.compareAndSet(word, bits, bits | (1L << player)));
+    }
 
-        //clear tokens from card
-        for(int player: slotToPlayers[slot])
-            playerToSlots[player].remove(new Integer(slot));
-        env.ui.removeTokens(slot);
-        slotToPlayers[slot].clear();
+    private void clearBit(int slot, int player){
+        int word = slot*playerWords + (player>>>6);
+        long bits;
+        do{
+            bits = slotToPlayers.get(word);
+        }while(!slotToPlayers.compareAndSet(word, bits, bits & ~(1L << player)));
+    }
 
-        env.ui.removeCard(slot);
-       
+    /**
+     * Removes a slot from the slots of a player, keeping the order of the others.
+     */
+    private void removeSlot(int player, int slot){
+        int[] slots = playerToSlots[player];
+        int count = playerTokenCounts.get(player);
+        for(int i=0; i<count; i++)
+            if(slots[i] == slot){
+                System.arraycopy(slots, i+1, slots, i, count-i-1);
+                playerTokenCounts.set(player, count-1);
+                return;
+            }
     }
 
     /**
-     * Placesall the cards that are on the table a player token on a grid slot.
-     * @param player - the player the token belongs to.
-     * @param slot   - the slot on which to place the token.
+     * Removes the tokens of all the players from a slot (called by the dealer, holding the write lock).
      */
-    public void placeToken(int player, int slot) {
-        // TODO implement
-        
-        if(tableLock.readLock().tryLock()){
-            if(slotToCard[slot] != null){
-                slotToPlayers[slot].add(player);
-                playerToSlots[player].add(slot);
-                env.ui.placeToken(player, slot);
+    private void clearTokens(int slot){
+        for(int word=0; word<playerWords; word++){
+            long bits = slotToPlayers.get(slot*playerWords + word);
+            while(bits != 0){
+                removeSlot(word*64 + Long.numberOfTrailingZeros(bits), slot);
+                bits &= bits-1;
             }
-            tableLock.readLock().unlock();
+            slotToPlayers.set(slot*playerWords + word, 0);
         }
     }
 
+    private static void tokenEvent(int player, int slot, boolean place, boolean dropped){
+        if(!FlightEvents.tokenEnabled()) return; //no event is created on the key press path unless recorded
+        FlightEvents.Token event = new FlightEvents.Token();
+        event.player = player;
+        event.slot = slot;
+        event.place = place;
+        event.dropped = dropped;
+        event.commit();
+    }
+
     /**
      * Removes a token of a player from a grid slot.
      * @param player - the player the token belongs to.
@@ -192,14 +251,17 @@ public class Table {
     public boolean removeToken(int player, int slot) {
         // TODO implement
         boolean removed = false;
-        if(tableLock.readLock().tryLock()){
-            if(playerToSlots[player].remove(new Integer(slot))){
+        boolean locked = tableLock.readLock().tryLock();
+        if(locked){
+            if(hasToken(player, slot)){
+                removeSlot(player, slot);
+                clearBit(slot, player);
                 env.ui.removeToken(player, slot);
-                slotToPlayers[slot].remove(new Integer(player));
                 removed = true;
             }
             tableLock.readLock().unlock();
         }
+        tokenEvent(player, slot, false, !locked);
         return removed;
     }
 
@@ -221,43 +283,300 @@ public class Table {
      */
     public List<Integer> removeAllCardsFromTable(){
 
+        int[] slots = new int[slotToCard.length];
+        for(int i=0; i<slots.length; i++)
+            slots[i] = i;
+        int[] removed = replaceCards(slots, emptyCards(slots.length));
+
         List<Integer> cards = new ArrayList<Integer>();
-        for(int i=0; i<slotToCard.length; i++){
-            if(slotToCard[i]!=null){
-                cards.add(slotToCard[i]);
-                removeCard(i);
+        for(int card : removed)
+            if(card >= 0)
+                cards.add(card);
+        return cards;
+    }
+
+    /**
+     * Replaces the cards in several slots as a single transaction: removes the tokens and the cards in the slots and
+     * places the new cards, with a single delay and a single ui notification.
+     * Takes the table's write lock only to commit the change (the delay and the ui notification run without it), so
+     * the caller must not hold the lock.
+     * @param slots - the slots to change.
+     * @param cards - the new card of each slot (-1 to leave the slot empty).
+     * @return      - the cards that were removed from the slots (-1 where a slot was empty).
+     */
+    public int[] replaceCards(int[] slots, int[] cards){
+        Replacement replacement = prepare(slots, cards);
+        int[] removed;
+        tableLock.writeLock().lock();
+        try{
+            removed = commit(replacement);
+        }
+        finally{
+            tableLock.writeLock().unlock();
+        }
+        show(replacement);
+        return removed;
+    }
+
+    /**
+     * A change of the cards in several slots, prepared without holding the table lock, and committed as a whole.
+     */
+    public static class Replacement {
+
+        /**
+         * The snapshot the change was prepared from, and the snapshot of the table after the change.
+         */
+        private final TableSnapshot base;
+        public final TableSnapshot snapshot;
+
+        private final int[] slots;
+        private final int[] cards;
+
+        private Replacement(TableSnapshot base, TableSnapshot snapshot, int[] slots, int[] cards){
+            this.base = base;
+            this.snapshot = snapshot;
+            this.slots = slots;
+            this.cards = cards;
+        }
+    }
+
+    /**
+     * Prepares the replacement of the cards in several slots without acquiring the table lock: waits the table delay
+     * and computes the snapshot of the table after the change, so that commit only has to publish it.
+     * Only the dealer (the only writer of the cards) may call it, and no other change of the cards may be committed
+     * before this one.
+     * @param slots - the slots to change.
+     * @param cards - the new card of each slot (-1 to leave the slot empty).
+     * @return      - the prepared replacement.
+     */
+    public Replacement prepare(int[] slots, int[] cards){
+        try {
+            Thread.sleep(env.config.tableDelayMillis);
+        } catch (InterruptedException ignored) {}
+
+        TableSnapshot base = published;
+        int[] next = new int[base.size()];
+        for(int slot=0; slot<next.length; slot++)
+            next[slot] = base.card(slot);
+        for(int slot : slots)
+            next[slot] = -1;
+        for(int i=0; i<slots.length; i++)
+            if(cards[i] >= 0)
+                next[slots[i]] = cards[i];
+        return new Replacement(base, new TableSnapshot(base.version + 1, next), slots, cards);
+    }
+
+    /**
+     * Commits a prepared replacement: removes the tokens and the cards in the slots, places the new cards and
+     * publishes the prepared snapshot. The ui is not notified: the slots stay claimed (and refuse tokens) until the
+     * replacement is shown, so that no token is displayed on a card before the card itself.
+     * The caller must hold the table's write lock.
+     * @param replacement - the replacement, prepared from the current table.
+     * @return            - the cards that were removed from the slots (-1 where a slot was empty).
+     */
+    public int[] commit(Replacement replacement){
+        if(published != replacement.base)
+            throw new IllegalStateException("the cards changed since the replacement was prepared");
+        int[] slots = replacement.slots;
+        int[] cards = replacement.cards;
+
+        int[] removed = new int[slots.length];
+        for(int i=0; i<slots.length; i++){
+            int slot = slots[i];
+            removed[i] = slotToCard[slot] == null ? -1 : slotToCard[slot];
+            if(removed[i] >= 0)
+                cardToSlot[removed[i]] = null;
+
+            //clear tokens from the slot
+            clearTokens(slot);
+
+            slotToCard[slot] = null;
+        }
+
+        //place the new cards only after all the old ones were removed (a card may move between the slots)
+        for(int i=0; i<slots.length; i++){
+            if(cards[i] >= 0){
+                slotToCard[slots[i]] = cards[i];
+                cardToSlot[cards[i]] = slots[i];
             }
+            holdVersion(slots[i]);
         }
- 
-        return cards;
+        version = replacement.snapshot.version;
+        published = replacement.snapshot;
+        return removed;
     }
 
-    public int[] playerTokens(Integer player){
-        int[] cards = new int[playerToSlots[player].size()];
-        for(int i=0; i<playerToSlots[player].size(); i++)
-            cards[i] = slotToCard[playerToSlots[player].get(i)];
+    /**
+     * Holds the slots before a replacement of their cards: claims every slot that is not claimed yet, so that no
+     * token is placed on it and no set is claimed from it until the replacement is shown.
+     * The caller must hold the table's write lock (so no player is claiming a set meanwhile).
+     * @param slots - the slots to hold.
+     */
+    public void hold(int[] slots){
+        for(int slot : slots)
+            if(!isClaimed(slot))
+                slotVersions.incrementAndGet(slot);
+    }
+
+    /**
+     * Shows a committed replacement: updates the ui with a single notification, and only then releases the slots to
+     * the players. Does not need the table lock, so the dealer calls it after releasing the write lock.
+     * @param replacement - the committed replacement.
+     */
+    public void show(Replacement replacement){
+        env.ui.updateSlots(replacement.slots, replacement.cards);
+        for(int slot : replacement.slots)
+            nextVersion(slot);
+    }
+
+    /**
+     * @param length - the number of slots.
+     * @return       - the cards of empty slots (to use with replaceCards).
+     */
+    public static int[] emptyCards(int length){
+        int[] cards = new int[length];
+        Arrays.fill(cards, -1);
         return cards;
     }
 
+    public int[] playerTokens(int player){
+        int[] cards = new int[playerTokenCounts.get(player)];
+        return Arrays.copyOf(cards, playerTokens(player, cards));
+    }
+
+    /**
+     * Fills the cards the player has tokens on, without allocating.
+     * @param player - the player.
+     * @param cards  - filled with the cards (of length featureSize at least).
+     * @return       - the number of cards.
+     */
+    public int playerTokens(int player, int[] cards){
+        TableSnapshot snapshot = published;
+        int count = Math.min(playerTokenCounts.get(player), cards.length);
+        for(int i=0; i<count; i++)
+            cards[i] = snapshot.card(playerToSlots[player][i]);
+        return count;
+    }
+
+    /**
+     * @param player - the player.
+     * @return       - the slots the player has tokens on.
+     */
+    public int[] playerSlots(int player){
+        return Arrays.copyOf(playerToSlots[player], playerTokenCounts.get(player));
+    }
+
+    /**
+     * Restores the cards and the tokens on an empty table, without delays (used when resuming a game).
+     * @param cards       - the card of each slot (-1 if none).
+     * @param playerSlots - the slots each player has tokens on.
+     */
+    public void restore(int[] cards, int[][] playerSlots){
+        int[] slots = new int[cards.length];
+        for(int slot=0; slot<cards.length; slot++){
+            slots[slot] = slot;
+            if(cards[slot] < 0) continue;
+            cardToSlot[cards[slot]] = slot;
+            slotToCard[slot] = cards[slot];
+            nextVersion(slot);
+        }
+        version++;
+        publish();
+        env.ui.updateSlots(slots, cards);
+        for(int player=0; player<playerSlots.length; player++)
+            for(int slot : playerSlots[player]){
+                addToken(player, slot);
+                env.ui.placeToken(player, slot);
+            }
+    }
+
     public boolean completedSet(int playerId){
-        return playerToSlots[playerId].size()==env.config.featureSize;
+        return playerTokenCounts.get(playerId)==env.config.featureSize;
     }
-    
+
     /**
-     * remove a correct set from the table
-     * @param cards - the set of cards to remove from the table
-     * @return - an array of slots that have now been cleared
+     * @param cards - cards on the table.
+     * @return      - the slot of each card.
      */
-    public int[] removeCards(int[] cards){
+    public int[] slotsOf(int[] cards){
         int[] slots = new int[cards.length];
-        for(int i=0; i<cards.length; i++){
+        for(int i=0; i<cards.length; i++)
             slots[i] = cardToSlot[cards[i]];
-            removeCard(cardToSlot[cards[i]]);
-        }
         return slots;
     }
 
+    /**
+     * Optimistically claims the set the player has tokens on, without involving the dealer: validates the set and
+     * then claims all of its slots by compare-and-set on their versions. A claimed slot cannot be claimed again
+     * (or get new tokens) until the dealer replaces its card.
+     * @param player  - the player claiming the set.
+     * @param slots   - filled with the claimed slots (of length featureSize).
+     * @param claimed - called with the claimed slots while the read lock is still held, so the claim is queued before
+     *                  the dealer can change the table (e.g. reshuffle the claimed cards back into the deck). The
+     *                  slots are the player's buffer, so they are copied if they are kept after the call.
+     * @return        - Point iff the slots were claimed, Penalty iff the cards are not a legal set,
+     *                  Availble iff the set is incomplete or another player claimed one of its slots first.
+     */
+    Player.State claimSet(int player, int[] slots, Consumer<int[]> claimed){
+        if(!tableLock.readLock().tryLock())
+            return Player.State.Availble; // the dealer is changing the table
+        try{
+            if(playerTokenCounts.get(player) != slots.length)
+                return Player.State.Availble;
+            int[] versions = claimVersions[player];
+            int[] cards = claimCards[player];
+            for(int i=0; i<slots.length; i++){
+                slots[i] = playerToSlots[player][i];
+                versions[i] = slotVersions.get(slots[i]);
+                if((versions[i] & 1) != 0)
+                    return Player.State.Availble;
+                cards[i] = slotToCard[slots[i]];
+            }
+            if(!env.util.testSet(cards))
+                return Player.State.Penalty;
+            for(int i=0; i<slots.length; i++){
+                if(!slotVersions.compareAndSet(slots[i], versions[i], versions[i]+1)){
+                    //lost the race, release the slots claimed so far
+                    for(int j=0; j<i; j++)
+                        slotVersions.set(slots[j], versions[j]);
+                    return Player.State.Availble;
+                }
+            }
+            claimed.accept(slots);
+            return Player.State.Point;
+        }
+        finally{
+            tableLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param slot - the slot to check.
+     * @return     - true iff the card in the slot was claimed by a player and waits to be replaced, or was just
+     *               placed and waits to be shown.
+     */
+    public boolean isClaimed(int slot){
+        return (slotVersions.get(slot) & 1) != 0;
+    }
+
+    /**
+     * Moves the slot to its next (unclaimed) version, called whenever its card changes.
+     */
+    private void nextVersion(int slot){
+        slotVersions.set(slot, (slotVersions.get(slot) | 1) + 1);
+    }
+
+    /**
+     * Moves the slot to its next claimed version, called when its card changes before the ui shows the change.
+     */
+    private void holdVersion(int slot){
+        slotVersions.set(slot, (slotVersions.get(slot) | 1) + 2);
+    }
+
+    /**
+     * @return - the cards on the table, in slot order (from the published snapshot, without acquiring any lock).
+     */
     public List<Integer> cardsOnTable(){
-        return Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
+        return published.cards();
     }
 }
@@ -0,0 +1,112 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable copy of the cards on the table at a specific table version.
+ */
+public class TableSnapshot {
+
+    /**
+     * The table version the snapshot was taken at.
+     */
+    public final long version;
+
+    /**
+     * Mapping between a slot and the card placed in it (-1 if none).
+     */
+    private final int[] slotToCard;
+
+    /**
+     * The cards on the table, in slot order.
+     */
+    private final int[] cards;
+
+    TableSnapshot(long version, int[] slotToCard) {
+        this.version = version;
+        this.slotToCard = slotToCard;
+        int count = 0;
+        for (int card : slotToCard)
+            if (card >= 0)
+                count++;
+        cards = new int[count];
+        count = 0;
+        for (int card : slotToCard)
+            if (card >= 0)
+                cards[count++] = card;
+    }
+
+    /**
+     * @param slot - the slot.
+     * @return     - the card in the slot, or -1 if the slot is empty.
+     */
+    public int card(int slot) {
+        return slotToCard[slot];
+    }
+
+    /**
+     * @param card - the card.
+     * @return     - the slot the card is in, or -1 if the card is not on the table.
+     */
+    public int slotOf(int card) {
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            if (slotToCard[slot] == card)
+                return slot;
+        return -1;
+    }
+
+    /**
+     * @return - the number of slots on the table.
+     */
+    public int size() {
+        return slotToCard.length;
+    }
+
+    /**
+     * @return - the cards on the table, in slot order.
+     */
+    public List<Integer> cards() {
+        List<Integer> list = new ArrayList<Integer>(cards.length);
+        for (int card : cards)
+            list.add(card);
+        return list;
+    }
+
+    /**
+     * @return - the number of cards on the table.
+     */
+    public int count() {
+        return cards.length;
+    }
+
+    /**
+     * Checks if the cards on the table contain a legal set.
+     * @param util - the game utilities.
+     * @return     - true iff there is a legal set on the table.
+     */
+    public boolean anySet(Util util) {
+        return util.anySet(cards);
+    }
+
+    /**
+     * Counts the legal sets on the table.
+     * @param util - the game utilities.
+     * @return     - the number of legal sets on the table.
+     */
+    public long countSets(Util util) {
+        return util.countSets(cards);
+    }
+
+    /**
+     * Enumerates the legal sets on the table.
+     * @param util    - the game utilities.
+     * @param visitor - the callback called for every set, until it returns false.
+     * @return        - false iff the visitor stopped the enumeration.
+     */
+    public boolean forEachSet(Util util, Util.SetVisitor visitor) {
+        return util.forEachSet(cards, visitor);
+    }
+}
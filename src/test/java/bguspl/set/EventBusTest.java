@@ -0,0 +1,154 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventBusTest {
+
+    private static final int PUBLISHERS = 3;
+    private static final int EVENTS = 5_000;
+
+    private static EventBus bus(int size) {
+        Logger logger = Logger.getLogger("EventBusTest");
+        logger.setUseParentHandlers(false);
+        return new EventBus(logger, size, 4);
+    }
+
+    @Test
+    void consumers_replayEveryEventInPublishOrder() throws InterruptedException {
+        EventBus bus = bus(64); // much smaller than the number of events, so the publishers wrap and wait
+        Recorder[] recorders = new Recorder[EventBus.WaitStrategy.values().length];
+        for (EventBus.WaitStrategy wait : EventBus.WaitStrategy.values()) {
+            recorders[wait.ordinal()] = new Recorder();
+            bus.addConsumer("test-" + wait, recorders[wait.ordinal()], wait);
+        }
+        UserInterface ui = new UserInterfaceEventBus(bus);
+
+        Thread[] publishers = new Thread[PUBLISHERS];
+        for (int p = 0; p < PUBLISHERS; p++) {
+            int player = p;
+            publishers[p] = new Thread(() -> {
+                for (int slot = 0; slot < EVENTS; slot++)
+                    ui.placeToken(player, slot);
+            });
+            publishers[p].start();
+        }
+        for (Thread publisher : publishers)
+            publisher.join();
+        bus.shutdown(10_000);
+
+        for (Recorder recorder : recorders)
+            for (int player = 0; player < PUBLISHERS; player++) {
+                List<Integer> slots = recorder.tokens.get(player);
+                assertEquals(EVENTS, slots.size());
+                for (int slot = 0; slot < EVENTS; slot++)
+                    assertEquals(slot, slots.get(slot));
+            }
+    }
+
+    @Test
+    void updateSlots_replaysACopyOfTheArrays() throws InterruptedException {
+        EventBus bus = bus(4);
+        Recorder recorder = new Recorder();
+        bus.addConsumer("test-copy", recorder, EventBus.WaitStrategy.BLOCKING);
+        UserInterface ui = new UserInterfaceEventBus(bus);
+
+        int[] slots = {0, 2};
+        int[] cards = {7, 9};
+        ui.updateSlots(slots, cards);
+        slots[0] = 3;
+        cards[0] = 8;
+        ui.announceWinner(new int[]{1});
+        bus.shutdown(10_000);
+
+        assertArrayEquals(new int[]{0, 2}, recorder.slots);
+        assertArrayEquals(new int[]{7, 9}, recorder.cards);
+        assertArrayEquals(new int[]{1}, recorder.winners);
+    }
+
+    @Test
+    void shutdown_stopsTheConsumerThreads() {
+        EventBus bus = bus(4);
+        Recorder recorder = new Recorder();
+        bus.addConsumer("test-stop", recorder, EventBus.WaitStrategy.BLOCKING);
+        new UserInterfaceEventBus(bus).setScore(0, 1);
+
+        bus.shutdown(10_000);
+
+        assertEquals(1, recorder.score);
+        assertNotNull(recorder.thread);
+        assertFalse(recorder.thread.isAlive());
+    }
+
+    /**
+     * A user interface that records the calls replayed by a consumer (on its thread).
+     */
+    private static class Recorder implements UserInterface {
+
+        private final List<List<Integer>> tokens = new ArrayList<>();
+        private int[] slots;
+        private int[] cards;
+        private int[] winners;
+        private int score;
+        private Thread thread;
+
+        private Recorder() {
+            for (int player = 0; player < PUBLISHERS; player++)
+                tokens.add(new ArrayList<>());
+        }
+
+        @Override
+        public void placeToken(int player, int slot) {
+            tokens.get(player).add(slot);
+        }
+
+        @Override
+        public void updateSlots(int[] slots, int[] cards) {
+            this.slots = slots;
+            this.cards = cards;
+        }
+
+        @Override
+        public void announceWinner(int[] players) {
+            winners = players;
+        }
+
+        @Override
+        public void setScore(int player, int score) {
+            this.score = score;
+            thread = Thread.currentThread();
+        }
+
+        @Override
+        public void placeCard(int card, int slot) {}
+
+        @Override
+        public void removeCard(int slot) {}
+
+        @Override
+        public void removeTokens() {}
+
+        @Override
+        public void removeTokens(int slot) {}
+
+        @Override
+        public void removeToken(int player, int slot) {}
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {}
+
+        @Override
+        public void setElapsed(long millies) {}
+
+        @Override
+        public void setFreeze(int player, long millies) {}
+
+        @Override
+        public void dispose() {}
+    }
+}
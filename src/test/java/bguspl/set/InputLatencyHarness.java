@@ -0,0 +1,256 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.awt.Canvas;
+import java.awt.Component;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * A headless stress harness that measures the end to end input latency of the game. Injects synthetic key events
+ * into InputManager for every player key map at a fixed rate, and measures (with a recording user interface) the time
+ * from each key press to the token change on the table, and from each completed set to the dealer's verdict.
+ *
+ * Usage: InputLatencyHarness [configFile] [pressesPerSecond] [seconds]
+ * Any config property can be overridden with a system property prefixed with "set." (e.g. -Dset.TableDelaySeconds=0).
+ */
+public class InputLatencyHarness {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        System.setProperty("java.awt.headless", "true");
+        String configFile = args.length > 0 ? args[0] : "config.properties";
+        long pressesPerSecond = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+
+        Logger logger = Logger.getLogger("SetLatencyHarness");
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, loadProperties(configFile));
+        Util util = new UtilImpl(config, CompletionTable.load(config, logger));
+        Player[] players = new Player[config.players];
+        Recorder recorder = new Recorder(config, (int) Math.min(pressesPerSecond * seconds + 1, Integer.MAX_VALUE - 8));
+        UserInterface ui = new UserInterfaceDecorator(logger, util, recorder);
+        if (config.eventBus) {
+            EventBus bus = new EventBus(logger, config.eventBusSize, Math.max(config.tableSize, config.players));
+            bus.addConsumer("recorder-events", recorder, EventBus.WaitStrategy.BLOCKING);
+            bus.addConsumer("log-events", new UserInterfaceDecorator(logger, util, null), EventBus.WaitStrategy.SLEEPING);
+            ui = new UserInterfaceEventBus(bus);
+        }
+        Env env = new Env(logger, config, ui, util);
+
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < config.humanPlayers);
+        InputManager inputManager = new InputManager(logger, config, new AtomicReferenceArray<>(players));
+
+        // prepare one reusable key event per player key (for the human players that have a key map)
+        Component source = new Canvas();
+        KeyEvent[][] events = new KeyEvent[config.humanPlayers][config.tableSize];
+        int[] keyPlayers = new int[config.humanPlayers];
+        int mapped = 0;
+        for (int player = 0; player < config.humanPlayers; player++) {
+            if (Arrays.stream(config.playerKeys(player)).anyMatch(keyCode -> keyCode == 0)) continue;
+            for (int slot = 0; slot < config.tableSize; slot++)
+                events[player][slot] = new KeyEvent(source, KeyEvent.KEY_PRESSED, 0, 0,
+                        config.playerKeys(player)[slot], KeyEvent.CHAR_UNDEFINED);
+            keyPlayers[mapped++] = player;
+        }
+        if (mapped == 0) throw new IllegalArgumentException("no human player has a key map");
+
+        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
+        dealerThread.start();
+        recorder.dealt.await(); // let the dealer deal the cards
+
+        // inject the key presses (from a single thread, like the event dispatch thread)
+        long injected = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end && dealerThread.isAlive()) {
+            long due = (System.nanoTime() - start) * pressesPerSecond / 1_000_000_000L;
+            for (; injected < due; injected++) {
+                int player = keyPlayers[(int) (injected % mapped)];
+                int slot = random.nextInt(config.tableSize);
+                recorder.pressed(player, slot);
+                inputManager.keyPressed(events[player][slot]);
+            }
+            Thread.sleep(1);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        dealer.terminate();
+        dealerThread.join();
+        env.ui.dispose();
+
+        System.out.printf("injected %d presses in %.2f seconds (%.0f presses per second)%n", injected, elapsed, injected / elapsed);
+        long rejected = 0;
+        long dropped = 0;
+        for (Player player : players) {
+            rejected += player.getRejectedPresses();
+            dropped += player.getDroppedPresses();
+        }
+        System.out.printf("handled %d presses, rejected %d presses (frozen or waiting players), "
+                + "dropped %d presses (full queues)%n", recorder.handled.get(), rejected, dropped);
+        System.out.println("press to token (micros): " + percentiles(recorder.pressLatencies, recorder.handled.get()));
+        System.out.println("set to verdict (micros): " + percentiles(recorder.verdictLatencies, recorder.verdicts.get()));
+    }
+
+    /**
+     * Loads the config properties from a file (or from the resources), overridden by "set." system properties.
+     */
+    static Properties loadProperties(String filename) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(Paths.get(filename)))
+            try (InputStream is = Files.newInputStream(Paths.get(filename))) {
+                properties.load(is);
+            }
+        else try (InputStream is = InputLatencyHarness.class.getClassLoader().getResourceAsStream(filename)) {
+            if (is != null) properties.load(is);
+        }
+        for (String name : System.getProperties().stringPropertyNames())
+            if (name.startsWith("set."))
+                properties.setProperty(name.substring(4), System.getProperty(name));
+        return properties;
+    }
+
+    private static String percentiles(long[] samples, int count) {
+        count = Math.min(count, samples.length);
+        if (count == 0) return "no samples";
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format("p50: %d p99: %d p999: %d max: %d (%d samples)", sorted[(int) (count * 0.5)] / 1000,
+                sorted[(int) (count * 0.99)] / 1000, sorted[(int) (count * 0.999)] / 1000, sorted[count - 1] / 1000, count);
+    }
+
+    /**
+     * A user interface that records the time of token changes and verdicts, instead of displaying them.
+     */
+    private static class Recorder implements UserInterface {
+
+        private final Config config;
+        private final AtomicLongArray pressTimes;
+        private final AtomicLongArray setTimes;
+        private final boolean[][] tokens;
+        private final int[] tokenCounts;
+
+        private final long[] pressLatencies;
+        private final long[] verdictLatencies;
+        private final AtomicInteger handled = new AtomicInteger();
+        private final AtomicInteger verdicts = new AtomicInteger();
+        private final CountDownLatch dealt = new CountDownLatch(1);
+
+        private Recorder(Config config, int capacity) {
+            this.config = config;
+            pressTimes = new AtomicLongArray(config.players * config.tableSize);
+            setTimes = new AtomicLongArray(config.players);
+            tokens = new boolean[config.players][config.tableSize];
+            tokenCounts = new int[config.players];
+            pressLatencies = new long[capacity];
+            verdictLatencies = new long[capacity];
+        }
+
+        private void pressed(int player, int slot) {
+            pressTimes.set(player * config.tableSize + slot, System.nanoTime());
+        }
+
+        private void handled(int player, int slot) {
+            long pressTime = pressTimes.getAndSet(player * config.tableSize + slot, 0);
+            if (pressTime == 0) return;
+            int sample = handled.getAndIncrement();
+            if (sample < pressLatencies.length) pressLatencies[sample] = System.nanoTime() - pressTime;
+        }
+
+        private void verdict(int player) {
+            long setTime = setTimes.getAndSet(player, 0);
+            if (setTime == 0) return;
+            int sample = verdicts.getAndIncrement();
+            if (sample < verdictLatencies.length) verdictLatencies[sample] = System.nanoTime() - setTime;
+        }
+
+        @Override
+        public synchronized void placeToken(int player, int slot) {
+            handled(player, slot);
+            if (!tokens[player][slot]) {
+                tokens[player][slot] = true;
+                if (++tokenCounts[player] == config.featureSize) setTimes.set(player, System.nanoTime());
+            }
+        }
+
+        @Override
+        public synchronized void removeToken(int player, int slot) {
+            handled(player, slot);
+            clearToken(player, slot);
+        }
+
+        @Override
+        public synchronized void removeTokens(int slot) {
+            for (int player = 0; player < tokens.length; player++)
+                clearToken(player, slot);
+        }
+
+        private void clearToken(int player, int slot) {
+            if (tokens[player][slot]) {
+                tokens[player][slot] = false;
+                --tokenCounts[player];
+            }
+        }
+
+        @Override
+        public synchronized void removeTokens() {
+            for (int slot = 0; slot < config.tableSize; slot++)
+                removeTokens(slot);
+        }
+
+        @Override
+        public synchronized void updateSlots(int[] slots, int[] cards) {
+            UserInterface.super.updateSlots(slots, cards);
+            dealt.countDown();
+        }
+
+        @Override
+        public void setScore(int player, int score) {
+            verdict(player);
+        }
+
+        @Override
+        public void setFreeze(int player, long millies) {
+            if (millies > 0) verdict(player);
+        }
+
+        @Override
+        public void placeCard(int card, int slot) {}
+
+        @Override
+        public void removeCard(int slot) {}
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {}
+
+        @Override
+        public void setElapsed(long millies) {}
+
+        @Override
+        public void setTimer(long reference, long warnMillis, boolean countdown) {}
+
+        @Override
+        public void announceWinner(int[] players) {}
+
+        @Override
+        public void dispose() {}
+    }
+}
@@ -0,0 +1,118 @@
+package bguspl.set;
+
+import bguspl.set.ex.IntRingBuffer;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A microbenchmark of the per key press cost of the player's key presses queue: the original LinkedBlockingQueue
+ * guarded by synchronized / wait / notifyAll, versus IntRingBuffer. A producer thread offers presses (retrying while
+ * the queue is full) and the consumer thread takes them. Reports the time and the bytes allocated (by both threads)
+ * per press.
+ *
+ * Usage: KeyPressBenchmark [presses] [capacity] [rounds]
+ */
+public class KeyPressBenchmark {
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * A queue of key presses, as seen by the benchmark.
+     */
+    private interface PressQueue {
+        boolean offer(int slot);
+
+        int take() throws InterruptedException;
+    }
+
+    /**
+     * The original implementation: a boxed LinkedBlockingQueue, guarded by its own monitor.
+     */
+    private static class LegacyQueue implements PressQueue {
+
+        private final LinkedBlockingQueue<Integer> keyPresses;
+
+        private LegacyQueue(int capacity) {
+            keyPresses = new LinkedBlockingQueue<Integer>(capacity);
+        }
+
+        @Override
+        public boolean offer(int slot) {
+            synchronized (keyPresses) {
+                boolean offered = keyPresses.offer(slot);
+                keyPresses.notifyAll();
+                return offered;
+            }
+        }
+
+        @Override
+        public int take() throws InterruptedException {
+            synchronized (keyPresses) {
+                while (keyPresses.isEmpty())
+                    keyPresses.wait();
+            }
+            return keyPresses.take();
+        }
+    }
+
+    /**
+     * The current implementation.
+     */
+    private static class RingQueue implements PressQueue {
+
+        private final IntRingBuffer keyPresses;
+
+        private RingQueue(int capacity) {
+            keyPresses = new IntRingBuffer(capacity);
+        }
+
+        @Override
+        public boolean offer(int slot) {
+            return keyPresses.offer(slot);
+        }
+
+        @Override
+        public int take() throws InterruptedException {
+            return keyPresses.take();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int presses = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        for (int round = 1; round <= rounds; round++) {
+            String prefix = round == 1 ? "warmup " : "round " + round + " ";
+            run(prefix + "LinkedBlockingQueue", new LegacyQueue(capacity), presses);
+            run(prefix + "IntRingBuffer      ", new RingQueue(capacity), presses);
+        }
+    }
+
+    private static void run(String name, PressQueue queue, int presses) throws InterruptedException {
+        long[] allocated = new long[1];
+        Thread consumer = new Thread(() -> {
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            try {
+                for (int i = 0; i < presses; i++)
+                    queue.take();
+            } catch (InterruptedException ignored) {}
+            allocated[0] = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        }, "consumer");
+
+        long start = System.nanoTime();
+        consumer.start();
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < presses; i++)
+            while (!queue.offer(i % 12))
+                Thread.yield();
+        long producerAllocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        consumer.join();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%s: %6.1f ns/press, %6.2f bytes/press allocated%n", name,
+                (double) elapsed / presses, (double) (producerAllocated + allocated[0]) / presses);
+    }
+}
@@ -0,0 +1,98 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NetworkInputManagerTest {
+
+    @Mock
+    private Player human;
+    @Mock
+    private Player computer;
+
+    private Config config;
+    private NetworkInputManager network;
+    private Thread thread;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", "1");
+        properties.setProperty("ComputerPlayers", "1");
+        properties.setProperty("NetworkPort", "0"); // any free port
+        Logger logger = Logger.getLogger("NetworkInputManagerTest");
+        logger.setUseParentHandlers(false);
+        config = new Config(logger, properties);
+        AtomicReferenceArray<Player> players = new AtomicReferenceArray<>(new Player[]{human, computer});
+        network = new NetworkInputManager(logger, config, players);
+        thread = new Thread(network, "network");
+        thread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        network.terminate();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), network.getPort());
+    }
+
+    @Test
+    void keyFrame_reachesThePlayer() throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(new byte[]{0, 5, 11}); // the player id, and then two presses
+            out.flush();
+
+            verify(human, timeout(5000)).keyPressed(5);
+            verify(human, timeout(5000)).keyPressed(11);
+        }
+    }
+
+    @Test
+    void slotOutOfTheTable_isRejected() throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(new byte[]{0, (byte) config.tableSize, 3});
+            out.flush();
+
+            verify(human, timeout(5000)).keyPressed(3);
+            verify(human, never()).keyPressed(config.tableSize);
+        }
+    }
+
+    @Test
+    void computerPlayer_isDisconnected() throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(new byte[]{1, 2});
+            out.flush();
+
+            socket.setSoTimeout(5000);
+            InputStream in = socket.getInputStream();
+            assertEquals(-1, in.read()); // the server closed the connection
+            verifyNoInteractions(computer);
+        }
+    }
+}
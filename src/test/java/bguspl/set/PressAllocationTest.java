@@ -0,0 +1,267 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Canvas;
+import java.awt.Component;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * An allocation regression test of the key press path: from the key event in InputManager, through the player's
+ * key presses queue, to placing or removing the token on the table (and the user interface call), and to detecting
+ * and claiming the completed sets. Every human player presses the keys of the table in turns, and the bytes allocated
+ * by the pressing thread and the player threads are measured with the thread allocation counters.
+ *
+ * The tests run with the shipped config (whose log level is above FINE, since logging a press allocates its message).
+ * With EventBus=True the display sinks run on the consumer threads, which are not measured.
+ * The sets are claimed in optimistic commit mode, on the player threads. A legal set is replaced by the dealer thread
+ * (not running here, and its cards leave the game), so the completed sets are not legal: the player claims the set,
+ * finds it illegal and pays a penalty, and then removes its tokens.
+ */
+class PressAllocationTest {
+
+    private static final int PRESSES = 50_000;
+    private static final int ROUNDS = 4;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void keyPressPath_doesNotAllocateInSteadyState() throws Exception {
+        assertPressesDoNotAllocate(false, false);
+    }
+
+    @Test
+    void keyPressPath_withEventBus_doesNotAllocateInSteadyState() throws Exception {
+        assertPressesDoNotAllocate(true, false);
+    }
+
+    @Test
+    void keyPressPath_completingSets_doesNotAllocateInSteadyState() throws Exception {
+        assertPressesDoNotAllocate(false, true);
+    }
+
+    @Test
+    void keyPressPath_completingSetsWithEventBus_doesNotAllocateInSteadyState() throws Exception {
+        assertPressesDoNotAllocate(true, true);
+    }
+
+    /**
+     * @param eventBus     - whether the user interface calls go through the event bus.
+     * @param completeSets - whether every player completes (illegal) sets, or presses every key twice (placing and then
+     *                       removing a token, so no set is ever completed).
+     */
+    private void assertPressesDoNotAllocate(boolean eventBus, boolean completeSets) throws Exception {
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        System.setProperty("java.awt.headless", "true");
+
+        Properties properties = new Properties();
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("config.properties")) {
+            if (is == null) throw new IOException("config.properties is not in the resources");
+            properties.load(is);
+        }
+        properties.setProperty("HumanPlayers", "2");
+        properties.setProperty("ComputerPlayers", "0");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("Hints", "False");
+        properties.setProperty("EventBus", Boolean.toString(eventBus));
+        properties.setProperty("OptimisticCommit", "True");
+        properties.setProperty("PenaltyFreezeSeconds", "0");
+
+        Logger logger = Logger.getLogger("PressAllocationTest");
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+        Player[] players = new Player[config.players];
+        TokenCounter counter = new TokenCounter();
+        UserInterface ui = new UserInterfaceDecorator(logger, util, counter);
+        EventBus bus = null;
+        if (config.eventBus) {
+            bus = new EventBus(logger, config.eventBusSize, Math.max(config.tableSize, config.players));
+            bus.addConsumer("counter-events", ui, EventBus.WaitStrategy.BLOCKING);
+            ui = new UserInterfaceEventBus(bus);
+        }
+        Env env = new Env(logger, config, ui, util);
+
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, true);
+        InputManager inputManager = new InputManager(logger, config, new AtomicReferenceArray<>(players));
+
+        Component source = new Canvas();
+        KeyEvent[][] events = new KeyEvent[config.players][config.tableSize];
+        for (int player = 0; player < config.players; player++)
+            for (int slot = 0; slot < config.tableSize; slot++) {
+                assertNotEquals(0, config.playerKeys(player)[slot], "player " + (player + 1) + " key of slot " + slot);
+                events[player][slot] = new KeyEvent(source, KeyEvent.KEY_PRESSED, 0, 0,
+                        config.playerKeys(player)[slot], KeyEvent.CHAR_UNDEFINED);
+            }
+
+        int[] slots = new int[config.tableSize];
+        int[] cards = new int[config.tableSize];
+        for (int slot = 0; slot < slots.length; slot++) {
+            slots[slot] = slot;
+            cards[slot] = slot;
+        }
+        table.replaceCards(slots, cards);
+
+        // each player places its tokens on the slots of a set that is not legal and then removes them, set after set
+        int[][] sets = completeSets ? illegalSets(util, config, cards) : null;
+        int pressesPerSet = 2 * config.featureSize;
+        for (Player player : players)
+            player.getPlayerThread().start();
+
+        long[] ids = new long[players.length + 1];
+        ids[0] = Thread.currentThread().getId();
+        for (int i = 0; i < players.length; i++)
+            ids[i + 1] = players[i].getPlayerThread().getId();
+
+        double bytesPerPress = 0;
+        long completed = 0;
+        try {
+            for (int round = 1; round <= ROUNDS; round++) {
+                long allocated = -allocatedBytes(ids);
+                for (int press = 0; press < PRESSES; press++) {
+                    long index = (long) (round - 1) * PRESSES + press; // the sets go on across the rounds
+                    int player = (int) (index % players.length);
+                    int turn = (int) (index / players.length);
+                    if (!completeSets) {
+                        press(inputManager, players[player], events[player][turn / 2 % config.tableSize]);
+                        continue;
+                    }
+                    int step = turn % pressesPerSet;
+                    int[] set = sets[turn / pressesPerSet % sets.length];
+                    press(inputManager, players[player], events[player][set[step % config.featureSize]]);
+                    if (step == config.featureSize - 1) {
+                        // the set is completed: wait for the penalty, so the next press is not cleared with the queue
+                        completed++;
+                        while (counter.freezes.get() < completed)
+                            Thread.yield();
+                    }
+                }
+                long expected = (long) PRESSES * round;
+                while (counter.tokens.get() < expected)
+                    Thread.yield();
+                allocated += allocatedBytes(ids);
+                bytesPerPress = (double) allocated / PRESSES;
+            }
+        } finally {
+            for (Player player : players) {
+                player.terminate();
+                player.getPlayerThread().interrupt();
+                player.getPlayerThread().join();
+            }
+            if (bus != null) bus.shutdown(1000);
+            dealer.getHintService().shutdown();
+        }
+
+        assertTrue(bytesPerPress < 1, "the key press path allocates " + bytesPerPress + " bytes per press");
+        if (completeSets) assertTrue(completed > 0);
+    }
+
+    /**
+     * Presses a key of a player, one press at a time per player (so no press is dropped), and again if it was rejected
+     * because the player was still paying its penalty.
+     */
+    private static void press(InputManager inputManager, Player player, KeyEvent event) {
+        long rejected;
+        do {
+            while (!player.getPressesQueue().isEmpty())
+                Thread.yield();
+            rejected = player.getRejectedPresses();
+            inputManager.keyPressed(event);
+        } while (player.getRejectedPresses() != rejected);
+    }
+
+    /**
+     * @return - the slots of the runs of consecutive slots (wrapping around the table) whose cards are not legal sets.
+     */
+    private static int[][] illegalSets(Util util, Config config, int[] cards) {
+        int[][] sets = new int[cards.length][];
+        int count = 0;
+        for (int first = 0; first < cards.length; first++) {
+            int[] slots = new int[config.featureSize];
+            int[] set = new int[config.featureSize];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = (first + i) % cards.length;
+                set[i] = cards[slots[i]];
+            }
+            if (!util.testSet(set)) sets[count++] = slots;
+        }
+        assertTrue(count > 0, "no illegal set on the table");
+        return Arrays.copyOf(sets, count);
+    }
+
+    private static long allocatedBytes(long[] ids) {
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(ids))
+            total += Math.max(0, allocated);
+        return total;
+    }
+
+    /**
+     * A user interface that only counts the token changes.
+     */
+    private static class TokenCounter implements UserInterface {
+
+        private final AtomicLong tokens = new AtomicLong();
+        private final AtomicLong freezes = new AtomicLong();
+
+        @Override
+        public void placeCard(int card, int slot) {}
+
+        @Override
+        public void removeCard(int slot) {}
+
+        @Override
+        public void placeToken(int player, int slot) {
+            tokens.incrementAndGet();
+        }
+
+        @Override
+        public void removeTokens() {}
+
+        @Override
+        public void removeTokens(int slot) {}
+
+        @Override
+        public void removeToken(int player, int slot) {
+            tokens.incrementAndGet();
+        }
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {}
+
+        @Override
+        public void setElapsed(long millies) {}
+
+        @Override
+        public void setFreeze(int player, long millies) {
+            freezes.incrementAndGet();
+        }
+
+        @Override
+        public void setScore(int player, int score) {}
+
+        @Override
+        public void announceWinner(int[] players) {}
+
+        @Override
+        public void dispose() {}
+    }
+}
@@ -0,0 +1,104 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionPoolTest {
+
+    private final SessionPool pool = new SessionPool(2);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void start_reusesTheThreadsAndNamesThemAfterTheTask() throws InterruptedException {
+        AtomicReference<Thread> first = new AtomicReference<>();
+        AtomicReference<String> name = new AtomicReference<>();
+        SessionPool.Task task = pool.start(() -> {
+            first.set(Thread.currentThread());
+            name.set(Thread.currentThread().getName());
+        }, "dealer");
+        task.join();
+
+        assertFalse(task.isAlive());
+        assertEquals("dealer", name.get());
+        assertNotEquals("dealer", first.get().getName());
+        Set<Thread> threads = new HashSet<>();
+        threads.add(first.get());
+        for (int game = 0; game < 10; game++) {
+            AtomicReference<Thread> thread = new AtomicReference<>();
+            pool.start(() -> thread.set(Thread.currentThread()), "dealer").join();
+            threads.add(thread.get());
+        }
+        assertTrue(threads.size() <= 2); // no thread was created after the pool started
+    }
+
+    @Test
+    void shutdown_interruptsAndJoinsTheTasksWithoutInterruptingTheirThreads() throws InterruptedException {
+        ShutdownCoordinator shutdown = new ShutdownCoordinator(logger());
+        AtomicBoolean terminate = new AtomicBoolean();
+        CountDownLatch waiting = new CountDownLatch(2);
+        for (int player = 0; player < 2; player++)
+            shutdown.register(pool.start(() -> {
+                waiting.countDown();
+                while (!terminate.get()) {
+                    try {
+                        Thread.sleep(Long.MAX_VALUE);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }, "Player " + player), () -> terminate.set(true));
+        assertTrue(waiting.await(5, TimeUnit.SECONDS));
+
+        List<String> alive = shutdown.shutdown(5000);
+
+        assertTrue(alive.isEmpty());
+        AtomicBoolean interrupted = new AtomicBoolean(true);
+        for (int player = 0; player < 2; player++)
+            pool.start(() -> interrupted.compareAndSet(true, Thread.currentThread().isInterrupted()), "next").join();
+        assertFalse(interrupted.get());
+    }
+
+    @Test
+    void interrupt_beforeTheTaskStarts_interruptsItWhenItStarts() throws InterruptedException {
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++)
+            pool.start(() -> {
+                busy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }, "busy");
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+
+        AtomicBoolean interrupted = new AtomicBoolean();
+        SessionPool.Task task = pool.start(() -> interrupted.set(Thread.currentThread().isInterrupted()), "queued");
+        task.interrupt();
+        release.countDown();
+        task.join(TimeUnit.SECONDS.toNanos(5));
+
+        assertFalse(task.isAlive());
+        assertTrue(interrupted.get());
+    }
+
+    private static Logger logger() {
+        Logger logger = Logger.getLogger("SessionPoolTest");
+        logger.setUseParentHandlers(false);
+        return logger;
+    }
+}
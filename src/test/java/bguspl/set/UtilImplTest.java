@@ -0,0 +1,120 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the set searches of large decks (which run in parallel) against results known in closed form, and the set
+ * tests that use the precomputed completion table against the ones that compute the features.
+ */
+class UtilImplTest {
+
+    private static Config config(int featureCount, String tablesDirectory) {
+        Properties properties = new Properties();
+        properties.setProperty("FeatureSize", "3");
+        properties.setProperty("FeatureCount", Integer.toString(featureCount));
+        properties.setProperty("SetTablesDirectory", tablesDirectory);
+        return new Config(logger(), properties);
+    }
+
+    private static Logger logger() {
+        Logger logger = Logger.getLogger("UtilImplTest");
+        logger.setUseParentHandlers(false);
+        return logger;
+    }
+
+    private static Util util(int featureCount) {
+        return new UtilImpl(config(featureCount, ""));
+    }
+
+    /**
+     * @return - the cards whose features are all 0 or 1 (no three of them form a set, since a set of distinct cards
+     *           needs a feature with all three values).
+     */
+    private static int[] binaryCards(int featureCount) {
+        return IntStream.range(0, 1 << featureCount).map(bits -> {
+            int card = 0;
+            for (int f = featureCount - 1; f >= 0; --f)
+                card = card * 3 + (bits >>> f & 1);
+            return card;
+        }).toArray();
+    }
+
+    @Test
+    void countSets_largeDeck_countsEverySet() {
+        Util util = util(6);
+        int[] deck = IntStream.range(0, 729).toArray();
+
+        // every pair of cards is completed by exactly one card, and every set has 3 pairs
+        assertEquals(729L * 728 / 6, util.countSets(deck));
+    }
+
+    @Test
+    void anySet_largeDeckWithoutSets_returnsFalse() {
+        Util util = util(10);
+        int[] deck = binaryCards(10);
+
+        assertFalse(util.anySet(deck));
+        assertEquals(0, util.countSets(deck));
+    }
+
+    @Test
+    void anySet_largeDeckWithOneSet_findsIt() {
+        Util util = util(10);
+        int[] deck = binaryCards(10);
+        deck[deck.length - 1] = 2; // with 0 and 1, all the features but the last are the same
+
+        assertTrue(util.anySet(deck));
+        assertEquals(1, util.countSets(deck));
+        List<int[]> sets = util.findSets(IntStream.of(deck).boxed().collect(Collectors.toList()), 5);
+        assertEquals(1, sets.size());
+        assertArrayEquals(new int[]{0, 1, 2}, sets.get(0));
+    }
+
+    @Test
+    void anySetAndForEachSet_withLength_searchOnlyThePrefix() {
+        Util util = util(4);
+        int[] buffer = {0, 1, 3, 4, 2}; // the only set, {0, 1, 2}, needs the last card
+
+        assertFalse(util.anySet(buffer, 4));
+        assertTrue(util.forEachSet(buffer, 4, set -> fail("found " + Arrays.toString(set))));
+        assertTrue(util.anySet(buffer, 5));
+
+        int[] large = binaryCards(10);
+        int[] withSet = Arrays.copyOf(large, large.length + 1);
+        withSet[large.length] = 2;
+        assertFalse(util(10).anySet(withSet, large.length));
+        assertTrue(util(10).anySet(withSet, withSet.length));
+    }
+
+    @Test
+    void completeSetAndTestSet_withCompletionTable_matchTheFeatures(@TempDir Path tables) {
+        Config config = config(4, tables.toString());
+        CompletionTable table = CompletionTable.load(config, logger());
+        assertNotNull(table);
+        Util withTable = new UtilImpl(config, table);
+        Util features = util(4);
+
+        for (int a = 0; a < config.deckSize; a++)
+            for (int b = 0; b < config.deckSize; b++) {
+                if (a == b) continue;
+                int third = features.completeSet(new int[]{a, b});
+                assertEquals(third, withTable.completeSet(new int[]{a, b}), "pair " + a + ", " + b);
+                for (int c = 0; c < config.deckSize; c++) {
+                    int[] cards = {a, b, c};
+                    assertEquals(features.testSet(cards), withTable.testSet(cards), Arrays.toString(cards));
+                }
+                assertTrue(withTable.testSet(new int[]{a, b, third}));
+            }
+    }
+}
@@ -0,0 +1,132 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameCheckpointTest {
+
+    /**
+     * The size of the file header: magic, format version and the game layout.
+     */
+    private static final int HEADER = 4 + 2 * 5;
+
+    @TempDir
+    Path directory;
+
+    private Config config;
+    private Path file;
+
+    @BeforeEach
+    void setUp() {
+        config = config("2");
+        file = directory.resolve("game.checkpoint");
+    }
+
+    private static Config config(String humanPlayers) {
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", humanPlayers);
+        properties.setProperty("ComputerPlayers", "0");
+        Logger logger = Logger.getLogger("GameCheckpointTest");
+        logger.setUseParentHandlers(false);
+        return new Config(logger, properties);
+    }
+
+    private GameCheckpoint checkpoint() {
+        int[] slotToCard = new int[config.tableSize];
+        Arrays.fill(slotToCard, -1);
+        slotToCard[0] = config.deckSize - 1;
+        slotToCard[1] = 0;
+        slotToCard[3] = 40;
+        int[] deck = {0, 40, 7, config.deckSize - 1};
+        int[] dealersDeck = {7};
+        int[] scores = {3, 0};
+        int[][] playerSlots = {{0, 3}, {}};
+        return new GameCheckpoint(slotToCard, deck, dealersDeck, scores, playerSlots, 42_000);
+    }
+
+    @Test
+    void readWrite_roundTrip_restoresTheGameState() throws IOException {
+        GameCheckpoint written = checkpoint();
+        written.write(config, file);
+
+        GameCheckpoint read = GameCheckpoint.read(config, file);
+
+        assertArrayEquals(written.slotToCard, read.slotToCard);
+        assertArrayEquals(written.deck, read.deck);
+        assertArrayEquals(written.dealersDeck, read.dealersDeck);
+        assertArrayEquals(written.scores, read.scores);
+        assertArrayEquals(written.playerSlots, read.playerSlots);
+        assertEquals(written.timer, read.timer);
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+    }
+
+    @Test
+    void read_otherGameLayout_throwsIOException() throws IOException {
+        checkpoint().write(config, file);
+
+        assertThrows(IOException.class, () -> GameCheckpoint.read(config("3"), file));
+    }
+
+    @Test
+    void read_cardOutOfTheDeck_throwsIOException() throws IOException {
+        checkpoint().write(config, file);
+        corrupt(HEADER, config.deckSize);
+
+        assertThrows(IOException.class, () -> GameCheckpoint.read(config, file));
+    }
+
+    @Test
+    void read_negativeDeckLength_throwsIOException() throws IOException {
+        checkpoint().write(config, file);
+        corrupt(HEADER + 4 * config.tableSize, -1);
+
+        assertThrows(IOException.class, () -> GameCheckpoint.read(config, file));
+    }
+
+    @Test
+    void read_duplicateCard_throwsIOException() throws IOException {
+        checkpoint().write(config, file);
+        corrupt(HEADER + 4 * config.tableSize + 4 + 4, 0); // the second card of the deck
+
+        assertThrows(IOException.class, () -> GameCheckpoint.read(config, file));
+    }
+
+    @Test
+    void read_tokenOnAnEmptySlot_throwsIOException() throws IOException {
+        GameCheckpoint checkpoint = checkpoint();
+        checkpoint.playerSlots[1] = new int[]{2};
+        checkpoint.write(config, file);
+
+        assertThrows(IOException.class, () -> GameCheckpoint.read(config, file));
+    }
+
+    @Test
+    void read_truncatedFile_throwsIOException() throws IOException {
+        checkpoint().write(config, file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertThrows(IOException.class, () -> GameCheckpoint.read(config, file));
+    }
+
+    /**
+     * Overwrites an int of the checkpoint file.
+     */
+    private void corrupt(int offset, int value) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(offset, value);
+        Files.write(file, bytes);
+    }
+}
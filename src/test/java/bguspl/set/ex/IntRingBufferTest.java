@@ -0,0 +1,142 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntRingBufferTest {
+
+    @Test
+    void poll_returnsTheValuesInOfferOrder() {
+        IntRingBuffer buffer = new IntRingBuffer(3);
+        assertTrue(buffer.offer(5));
+        assertTrue(buffer.offer(0));
+        assertTrue(buffer.offer(7));
+
+        assertEquals(3, buffer.size());
+        assertEquals(5, buffer.poll());
+        assertEquals(0, buffer.poll());
+        assertEquals(7, buffer.poll());
+        assertEquals(IntRingBuffer.EMPTY, buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void offer_fullBuffer_rejectsTheValue() {
+        IntRingBuffer buffer = new IntRingBuffer(2);
+        assertTrue(buffer.offer(1));
+        assertTrue(buffer.offer(2));
+
+        assertFalse(buffer.offer(3));
+        assertEquals(2, buffer.size());
+        assertEquals(1, buffer.poll());
+        assertTrue(buffer.offer(3));
+    }
+
+    @Test
+    void offerAndPoll_wrapAroundTheCells() {
+        IntRingBuffer buffer = new IntRingBuffer(3);
+        for (int value = 0; value < 100; value++) {
+            assertTrue(buffer.offer(value));
+            assertTrue(buffer.offer(value + 1000));
+            assertEquals(value, buffer.poll());
+            assertEquals(value + 1000, buffer.poll());
+        }
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void clear_removesAllTheValues() {
+        IntRingBuffer buffer = new IntRingBuffer(4);
+        buffer.offer(1);
+        buffer.offer(2);
+        buffer.offer(3);
+
+        buffer.clear();
+
+        assertTrue(buffer.isEmpty());
+        assertEquals(IntRingBuffer.EMPTY, buffer.poll());
+        for (int value = 0; value < 4; value++)
+            assertTrue(buffer.offer(value));
+    }
+
+    @Test
+    void take_waitsUntilAValueIsOffered() throws InterruptedException {
+        IntRingBuffer buffer = new IntRingBuffer(2);
+        AtomicInteger taken = new AtomicInteger(IntRingBuffer.EMPTY);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            try {
+                taken.set(buffer.take());
+            } catch (InterruptedException ignored) {
+            }
+            done.countDown();
+        });
+        consumer.start();
+
+        assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+        assertTrue(buffer.offer(9));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(9, taken.get());
+        consumer.join();
+    }
+
+    @Test
+    void take_interrupted_throwsInterruptedException() throws InterruptedException {
+        IntRingBuffer buffer = new IntRingBuffer(2);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                buffer.take();
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        consumer.start();
+        Thread.sleep(50);
+
+        consumer.interrupt();
+        consumer.join(5000);
+
+        assertFalse(consumer.isAlive());
+        assertTrue(thrown.get() instanceof InterruptedException);
+    }
+
+    @Test
+    void concurrentProducers_deliverEveryValueExactlyOnce() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 20_000;
+        IntRingBuffer buffer = new IntRingBuffer(8);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            threads[p] = new Thread(() -> {
+                for (int value = first; value < first + perProducer; value++)
+                    while (!buffer.offer(value))
+                        Thread.yield();
+            });
+            threads[p].start();
+        }
+
+        boolean[] seen = new boolean[producers * perProducer];
+        int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        for (int i = 0; i < seen.length; i++) {
+            int value = buffer.take();
+            assertFalse(seen[value], "value " + value + " was taken twice");
+            seen[value] = true;
+            // the values of each producer arrive in the order it offered them
+            assertTrue(value > last[value / perProducer]);
+            last[value / perProducer] = value;
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertTrue(buffer.isEmpty());
+    }
+}
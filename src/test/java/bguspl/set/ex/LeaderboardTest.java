@@ -0,0 +1,136 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeaderboardTest {
+
+    /**
+     * The position of the index sequence in the file (right after the header).
+     */
+    private static final int INDEX_SEQUENCE = 64;
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private Leaderboard leaderboard;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = directory.resolve("leaderboard.bin");
+        leaderboard = Leaderboard.open(file, 16);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        leaderboard.close();
+    }
+
+    @Test
+    void record_accumulatesTheStatisticsOfEveryName() throws IOException {
+        leaderboard.record(new String[]{"ann", "bob"}, new int[]{3, 5}, new boolean[]{false, true});
+        leaderboard.record(new String[]{"ann", "bob"}, new int[]{4, 1}, new boolean[]{true, false});
+
+        Leaderboard.Entry ann = leaderboard.get("ann");
+        assertEquals(2, ann.games);
+        assertEquals(1, ann.wins);
+        assertEquals(7, ann.points);
+        assertEquals(4, ann.bestScore);
+        assertNull(leaderboard.get("carol"));
+    }
+
+    @Test
+    void top_ordersTheNamesByPointsAndPersists() throws IOException {
+        leaderboard.record(new String[]{"ann", "bob", "carol"}, new int[]{3, 5, 1}, new boolean[]{false, true, false});
+        leaderboard.record(new String[]{"carol"}, new int[]{6}, new boolean[]{true});
+        leaderboard.close();
+
+        leaderboard = Leaderboard.open(file, 16);
+        List<Leaderboard.Entry> top = leaderboard.top(10);
+
+        assertEquals(3, top.size());
+        assertEquals("carol", top.get(0).name);
+        assertEquals("bob", top.get(1).name);
+        assertEquals("ann", top.get(2).name);
+        assertEquals(1, leaderboard.top(1).size());
+    }
+
+    @Test
+    void readers_recoverARecordLeftOddByAStoppedWriter() throws IOException {
+        leaderboard.record(new String[]{"ann"}, new int[]{3}, new boolean[]{true});
+        long record = recordOf("ann");
+        writeLong(record, readLong(record) + 1); // a writer stopped in the middle of its write
+
+        long start = System.nanoTime();
+        Leaderboard.Entry ann = leaderboard.get("ann");
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(3, ann.points);
+        assertEquals(0, readLong(record) & 1);
+    }
+
+    @Test
+    void writers_continueFromAnIndexLeftOddByAStoppedWriter() throws IOException {
+        leaderboard.record(new String[]{"ann"}, new int[]{3}, new boolean[]{true});
+        writeLong(INDEX_SEQUENCE, readLong(INDEX_SEQUENCE) + 1);
+
+        leaderboard.record(new String[]{"bob"}, new int[]{5}, new boolean[]{false});
+
+        assertEquals(0, readLong(INDEX_SEQUENCE) & 1);
+        List<Leaderboard.Entry> top = leaderboard.top(10);
+        assertEquals("bob", top.get(0).name);
+        assertEquals("ann", top.get(1).name);
+    }
+
+    @Test
+    void readers_recoverAnIndexLeftOddByAStoppedWriter() throws IOException {
+        leaderboard.record(new String[]{"ann"}, new int[]{3}, new boolean[]{true});
+        writeLong(INDEX_SEQUENCE, readLong(INDEX_SEQUENCE) + 1);
+
+        assertEquals(1, leaderboard.top(10).size());
+        assertEquals(0, readLong(INDEX_SEQUENCE) & 1);
+    }
+
+    /**
+     * @return - the position of the record (its sequence) of a name in the file.
+     */
+    private long recordOf(String name) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] pattern = name.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            int j = 0;
+            while (j < pattern.length && bytes[i + j] == pattern[j]) j++;
+            if (j == pattern.length) return i - 12; // the name follows the sequence and the name length
+        }
+        throw new AssertionError("no record of " + name);
+    }
+
+    private long readLong(long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            channel.read(buffer, position);
+            return buffer.getLong(0);
+        }
+    }
+
+    private void writeLong(long position, long value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putLong(0, value), position);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UserInterface;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class TableTest {
+
+    @Mock
+    private UserInterface ui;
+
+    private Config config;
+    private Util util;
+    private Table table;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", "2");
+        properties.setProperty("ComputerPlayers", "0");
+        properties.setProperty("TableDelaySeconds", "0");
+        Logger logger = Logger.getLogger("TableTest");
+        logger.setUseParentHandlers(false);
+        config = new Config(logger, properties);
+        util = new UtilImpl(config);
+        table = new Table(new Env(logger, config, ui, util));
+    }
+
+    /**
+     * Deals the cards to the first slots of the table.
+     */
+    private void deal(int... cards) {
+        int[] slots = new int[cards.length];
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = i;
+        table.replaceCards(slots, cards);
+    }
+
+    private int[] setCards() {
+        return util.findSets(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8), 1).get(0);
+    }
+
+    @Test
+    void claimSet_legalSet_queuesTheClaimBeforeTheDealerCanChangeTheTable() {
+        int[] set = setCards();
+        deal(set);
+        for (int slot = 0; slot < set.length; slot++)
+            table.placeToken(0, slot);
+
+        List<int[]> queued = new ArrayList<>();
+        int[] slots = new int[config.featureSize];
+        Player.State state = table.claimSet(0, slots, claimed -> {
+            // the dealer cannot take the write lock (and reshuffle the claimed cards) before the claim is queued
+            assertFalse(table.tableLock.writeLock().tryLock());
+            queued.add(claimed.clone());
+        });
+
+        assertEquals(Player.State.Point, state);
+        assertEquals(1, queued.size());
+        assertArrayEquals(slots, queued.get(0));
+        for (int slot : slots)
+            assertTrue(table.isClaimed(slot));
+    }
+
+    @Test
+    void claimSet_illegalSet_penaltyWithoutClaim() {
+        int[] set = setCards();
+        int[] cards = set.clone();
+        for (int card = 0; card < config.deckSize; card++)
+            if (card != set[0] && card != set[1] && card != set[2] && !util.testSet(new int[]{set[0], set[1], card})) {
+                cards[2] = card;
+                break;
+            }
+        deal(cards);
+        for (int slot = 0; slot < cards.length; slot++)
+            table.placeToken(0, slot);
+
+        Player.State state = table.claimSet(0, new int[config.featureSize], claimed -> fail("an illegal set was claimed"));
+
+        assertEquals(Player.State.Penalty, state);
+        for (int slot = 0; slot < cards.length; slot++)
+            assertFalse(table.isClaimed(slot));
+    }
+
+    @Test
+    void claimSet_slotClaimedByAnotherPlayer_isNotClaimedTwice() {
+        int[] set = setCards();
+        deal(set);
+        for (int slot = 0; slot < set.length; slot++) {
+            table.placeToken(0, slot);
+            table.placeToken(1, slot);
+        }
+
+        assertEquals(Player.State.Point, table.claimSet(0, new int[config.featureSize], claimed -> {}));
+        assertEquals(Player.State.Availble,
+                table.claimSet(1, new int[config.featureSize], claimed -> fail("the set was claimed twice")));
+    }
+
+    @Test
+    void claimSet_incompleteSet_isNotClaimed() {
+        deal(setCards());
+        table.placeToken(0, 0);
+
+        assertEquals(Player.State.Availble,
+                table.claimSet(0, new int[config.featureSize], claimed -> fail("an incomplete set was claimed")));
+        assertFalse(table.isClaimed(0));
+    }
+
+    @Test
+    void replaceCards_clearsTheClaimAndTheTokens() {
+        int[] set = setCards();
+        deal(set);
+        for (int slot = 0; slot < set.length; slot++)
+            table.placeToken(0, slot);
+        table.claimSet(0, new int[config.featureSize], claimed -> {});
+
+        deal(Table.emptyCards(set.length));
+
+        for (int slot = 0; slot < set.length; slot++)
+            assertFalse(table.isClaimed(slot));
+        assertEquals(0, table.playerTokens(0).length);
+    }
+
+    @Test
+    void commit_updatesTheUiOnlyWhenTheReplacementIsShown() {
+        int[] set = setCards();
+        Table.Replacement replacement = table.prepare(new int[]{0, 1, 2}, set);
+
+        table.tableLock.writeLock().lock();
+        try {
+            table.commit(replacement);
+            verify(ui, never()).updateSlots(any(), any());
+        } finally {
+            table.tableLock.writeLock().unlock();
+        }
+        // the new cards refuse tokens until the ui shows them
+        table.placeToken(0, 0);
+        assertTrue(table.isClaimed(0));
+        assertEquals(0, table.playerTokens(0).length);
+
+        table.show(replacement);
+
+        verify(ui).updateSlots(new int[]{0, 1, 2}, set);
+        assertFalse(table.isClaimed(0));
+        table.placeToken(0, 0);
+        assertArrayEquals(new int[]{0}, table.playerTokens(0));
+    }
+
+    @Test
+    void replaceCards_updatesTheUiWithoutHoldingTheLock() {
+        doAnswer(invocation -> {
+            assertTrue(table.tableLock.writeLock().tryLock());
+            table.tableLock.writeLock().unlock();
+            return null;
+        }).when(ui).updateSlots(any(), any());
+
+        deal(setCards());
+
+        verify(ui).updateSlots(any(), any());
+    }
+
+    @Test
+    void hold_refusesTokensAndClaimsUntilTheReplacementIsShown() {
+        int[] set = setCards();
+        deal(set);
+        table.placeToken(0, 0);
+        table.placeToken(0, 1);
+
+        table.tableLock.writeLock().lock();
+        try {
+            table.hold(new int[]{0, 1, 2});
+        } finally {
+            table.tableLock.writeLock().unlock();
+        }
+        table.placeToken(0, 2);
+        assertEquals(2, table.playerTokens(0).length);
+        assertEquals(Player.State.Availble,
+                table.claimSet(0, new int[config.featureSize], claimed -> fail("a held set was claimed")));
+
+        Table.Replacement replacement = table.prepare(new int[]{0, 1, 2}, set);
+        table.tableLock.writeLock().lock();
+        try {
+            table.commit(replacement);
+        } finally {
+            table.tableLock.writeLock().unlock();
+        }
+        table.show(replacement);
+
+        for (int slot = 0; slot < set.length; slot++)
+            table.placeToken(0, slot);
+        assertEquals(3, table.playerTokens(0).length);
+    }
+}